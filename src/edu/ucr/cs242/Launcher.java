@@ -25,10 +25,18 @@ public class Launcher {
                 new Subroutine("mapreduce",
                         "edu.ucr.cs242.mixer.mapreduce.IndexMapReduce",
                         "execute the Mixer MapReduce indexer"));
+        subroutines.put("ixbench",
+                new Subroutine("ixbench",
+                        "edu.ucr.cs242.mixer.mapreduce.IndexBenchmark",
+                        "compare the serialized size and time of the index postings"));
         subroutines.put("pagerank",
                 new Subroutine("pagerank",
                         "edu.ucr.cs242.mixer.pagerank.PageRankMapReduce",
                         "execute the Mixer PageRank MapReduce"));
+        subroutines.put("prbench",
+                new Subroutine("prbench",
+                        "edu.ucr.cs242.mixer.pagerank.PageRankBenchmark",
+                        "compare the iterations and time of the PageRank solvers"));
         subroutines.put("importer",
                 new Subroutine("importer",
                         "edu.ucr.cs242.mixer.importer.NoSQLImporter",
@@ -3,18 +3,20 @@ package edu.ucr.cs242;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
 
-import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 public class Utility {
     public static void waitThread(Thread thread) {
@@ -121,6 +123,10 @@ public class Utility {
             "other", "some", "such", "no", "nor", "not", "only", "own", "same", "so", "than", "too", "very"
     );
 
+    public static List<String> getStopWords() {
+        return Collections.unmodifiableList(STOP_WORDS);
+    }
+
     public static boolean isStopWord(String word) {
         return STOP_WORDS.contains(word);
     }
@@ -133,6 +139,80 @@ public class Utility {
                 .collect(Collectors.toList());
     }
 
+    private static InputStream openJsonFile(Path file) throws IOException {
+        InputStream input = new FileInputStream(file.toFile());
+        return file.toString().endsWith(".gz") ? new GZIPInputStream(input, 1 << 16) : input;
+    }
+
+    /**
+     * Open a JSON lines file exported by SQLExporter, which is gzip-compressed if only `<fileName>.gz` exists,
+     * or split into the output of each export thread if only `<name>-00000.json` etc. exist.
+     * @param folder   The folder to the JSON output.
+     * @param fileName The file name, without the `.gz` suffix.
+     * @return The UTF-8 reader of the file, or of all its shards in order.
+     */
+    public static BufferedReader openJsonInput(String folder, String fileName) throws IOException {
+        Path plain = Paths.get(folder, fileName);
+        Path compressed = Paths.get(folder, fileName + ".gz");
+
+        List<Path> files = Collections.singletonList(plain);
+        if (!Files.exists(plain) && Files.exists(compressed)) {
+            files = Collections.singletonList(compressed);
+        } else if (!Files.exists(plain)) {
+            // e.g. data-00000.json, data-00001.json.gz
+            String shardPattern = Pattern.quote(fileName.substring(0, fileName.lastIndexOf('.'))) +
+                    "-\\d{5}\\.json(\\.gz)?";
+            try (Stream<Path> list = Files.list(Paths.get(folder))) {
+                List<Path> shards = list.filter(p -> p.getFileName().toString().matches(shardPattern))
+                        .sorted().collect(Collectors.toList());
+                if (!shards.isEmpty()) {
+                    files = shards;
+                }
+            }
+        }
+
+        List<InputStream> inputs = new ArrayList<>();
+        for (Path file : files) {
+            inputs.add(openJsonFile(file));
+        }
+        return new BufferedReader(new InputStreamReader(
+                new SequenceInputStream(Collections.enumeration(inputs)), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * List the files of a Hadoop job output, which is either a single file, or the folder of a part file per reducer.
+     * @param path The file name to the output, or its folder.
+     * @return The file itself, or the part files of the folder in order.
+     */
+    public static File[] listJobOutput(String path) throws FileNotFoundException {
+        File output = new File(path);
+        if (!output.isDirectory()) {
+            return new File[] { output };
+        }
+
+        // Skip the `_SUCCESS` marker, and the checksum files of the local file system.
+        File[] files = output.listFiles((dir, name) -> !name.startsWith("_") && !name.startsWith("."));
+        if (files == null) {
+            throw new FileNotFoundException(path + " cannot be listed.");
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Open the text lines of a Hadoop job output, see {@link #listJobOutput}.
+     * @param path The file name to the output, or its folder.
+     * @return The UTF-8 reader of the file, or of all its part files in order.
+     */
+    public static BufferedReader openJobOutput(String path) throws IOException {
+        List<InputStream> inputs = new ArrayList<>();
+        for (File file : listJobOutput(path)) {
+            inputs.add(new FileInputStream(file));
+        }
+        return new BufferedReader(new InputStreamReader(
+                new SequenceInputStream(Collections.enumeration(inputs)), StandardCharsets.UTF_8), 1 << 16);
+    }
+
     public static String levelDBGet(DB db, String key) {
         return JniDBFactory.asString(db.get(JniDBFactory.bytes(key)));
     }
@@ -0,0 +1,153 @@
+package edu.ucr.cs242.mixer.exporter;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.regex.Pattern;
+
+public class ExportThread extends Thread {
+    /**
+     * The number of records to be batch-read per SQL query.
+     */
+    public static final int BATCH_READ_COUNT = 1000;
+
+    /**
+     * The SQL query statement. Pages forward by rowid, so each batch starts where the last one ended,
+     * instead of skipping all previous rows again as OFFSET does.
+     */
+    public static final String SQL_QUERY =
+            "SELECT rowid, title, content, categories, outLinks FROM pages WHERE rowid > ? ORDER BY rowid LIMIT ?";
+
+    private static final Pattern SEPARATOR = Pattern.compile(Pattern.quote("|"));
+
+    private final SQLExporter exporter;
+    private final int threadId;
+    private final long afterRowId;
+    private final int pageStartIndex;
+    private final int numOfPages;
+    private final String jdbcUrl;
+    private final Writer dataOutput;
+    private final Writer indexOutput;
+    private final LinkResolver linkResolver;
+
+    /**
+     * Construct an export thread with given settings.
+     * @param exporter       The associated exporter.
+     * @param threadId       The associated thread id.
+     * @param afterRowId     The rowid right before the first page to export.
+     * @param pageStartIndex The id of the first page to export.
+     * @param numOfPages     The number of pages to export.
+     * @param jdbcUrl        The JDBC url of the database, to which the thread opens its own connection.
+     * @param dataOutput     The data.json output of this thread, closed when the thread exits.
+     * @param indexOutput    The index.json output of this thread, closed when the thread exits.
+     * @param linkResolver   The link resolver shared by all threads.
+     */
+    public ExportThread(SQLExporter exporter, int threadId, long afterRowId, int pageStartIndex, int numOfPages,
+                        String jdbcUrl, Writer dataOutput, Writer indexOutput, LinkResolver linkResolver) {
+        this.exporter = exporter;
+        this.threadId = threadId;
+        this.afterRowId = afterRowId;
+        this.pageStartIndex = pageStartIndex;
+        this.numOfPages = numOfPages;
+        this.jdbcUrl = jdbcUrl;
+        this.dataOutput = dataOutput;
+        this.indexOutput = indexOutput;
+        this.linkResolver = linkResolver;
+    }
+
+    private static String[] split(String value) {
+        return SEPARATOR.split(value != null ? value : "");
+    }
+
+    private static void writeArray(Writer output, String[] values) throws IOException {
+        output.write('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                output.write(',');
+            }
+            JSONObject.quote(values[i], output);
+        }
+        output.write(']');
+    }
+
+    // {"id":<id>,"title":<title>,"content":<content>,"categories":[<category>...]}
+    private static void writeData(Writer output, int id, String title, String content, String[] categories)
+            throws IOException {
+        output.write("{\"id\":");
+        output.write(Integer.toString(id));
+        output.write(",\"title\":");
+        JSONObject.quote(title, output);
+        output.write(",\"content\":");
+        JSONObject.quote(content, output);
+        output.write(",\"categories\":");
+        writeArray(output, categories);
+        output.write("}\n");
+    }
+
+    // {"id":<id>,"title":<title>}
+    private static void writeIndex(Writer output, int id, String title) throws IOException {
+        output.write("{\"id\":");
+        output.write(Integer.toString(id));
+        output.write(",\"title\":");
+        JSONObject.quote(title, output);
+        output.write("}\n");
+    }
+
+    @Override
+    public void run() {
+        int exportedCount = 0;
+
+        System.out.println("ExportThread " + threadId + " started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Pages to export: " + numOfPages + ".");
+
+        // A connection per thread, as a JDBC connection is not meant to be shared by concurrent queries.
+        try (Writer dataOutput = this.dataOutput;
+             Writer indexOutput = this.indexOutput;
+             Connection dbConnection = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement statement = dbConnection.prepareStatement(SQL_QUERY)) {
+
+            long lastRowId = afterRowId;
+            boolean hasMore = true;
+
+            while (hasMore && exportedCount < numOfPages) {
+                int batchSize = Math.min(BATCH_READ_COUNT, numOfPages - exportedCount);
+                statement.setLong(1, lastRowId);
+                statement.setInt(2, batchSize);
+
+                int localCount = 0;
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        int id = pageStartIndex + exportedCount + localCount;
+                        lastRowId = result.getLong("rowid");
+                        String title = result.getString("title");
+
+                        writeData(dataOutput, id, title, result.getString("content"),
+                                split(result.getString("categories")));
+                        writeIndex(indexOutput, id, title);
+                        linkResolver.add(id, title, split(result.getString("outLinks")));
+
+                        ++localCount;
+                    }
+                }
+
+                // Fewer rows than asked, someone deleted pages since counting.
+                hasMore = localCount == batchSize;
+                exportedCount += localCount;
+                exporter.reportProgress(localCount);
+            }
+        } catch (SQLException e) {
+            System.out.println("ExportThread " + threadId + " throws an SQLException.");
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.out.println("ExportThread " + threadId + " throws an IOException.");
+            e.printStackTrace();
+        }
+    }
+}
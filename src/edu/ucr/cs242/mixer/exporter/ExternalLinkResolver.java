@@ -0,0 +1,298 @@
+package edu.ucr.cs242.mixer.exporter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Resolve links with bounded memory, by external sort-merge.
+ *
+ * Every page and every link is spilled as a (title, kind, id) record into runs sorted by title, where a page
+ * sorts before the links to it. Merging the runs therefore brings each page right before the links to it,
+ * which resolves them into (source id, target id) pairs. The pairs are spilled into runs sorted by source id,
+ * and merging those groups the outgoing links of each page together.
+ */
+public class ExternalLinkResolver implements LinkResolver {
+    private static final byte PAGE = 0;
+    private static final byte LINK = 1;
+
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    private static class TitleRecord implements Comparable<TitleRecord> {
+        private final String title;
+        private final byte kind;
+        // The page id for PAGE, the source page id for LINK
+        private final int id;
+
+        private TitleRecord(String title, byte kind, int id) {
+            this.title = title;
+            this.kind = kind;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TitleRecord other) {
+            int result = title.compareTo(other.title);
+            return result != 0 ? result : Byte.compare(kind, other.kind);
+        }
+    }
+
+    /**
+     * A sorted run of title records being merged.
+     */
+    private static class TitleRunReader implements Closeable {
+        private final DataInputStream input;
+        private int remaining;
+        private TitleRecord current;
+
+        private TitleRunReader(Path run) throws IOException {
+            input = openRunInput(run);
+            remaining = input.readInt();
+        }
+
+        // Read the next record into current, null at the end of the run.
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            --remaining;
+
+            byte kind = input.readByte();
+            int id = input.readInt();
+            byte[] title = new byte[input.readInt()];
+            input.readFully(title);
+            current = new TitleRecord(new String(title, StandardCharsets.UTF_8), kind, id);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * A sorted run of (source id, target id) pairs being merged.
+     */
+    private static class PairRunReader implements Closeable {
+        private final DataInputStream input;
+        private int remaining;
+        private long current;
+
+        private PairRunReader(Path run) throws IOException {
+            input = openRunInput(run);
+            remaining = input.readInt();
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            --remaining;
+
+            current = input.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private final Path spillPath;
+
+    private final TitleRecord[] titleBuffer;
+    private int titleCount = 0;
+    private final List<Path> titleRuns = new ArrayList<>();
+
+    // (source id << 32) | target id, so sorting the pairs orders them by source id.
+    private final long[] pairBuffer;
+    private int pairCount = 0;
+    private final List<Path> pairRuns = new ArrayList<>();
+
+    /**
+     * Construct an external link resolver, with given settings.
+     * @param spillPath        The folder to create the spill files in, they are deleted on close.
+     * @param spillRecordCount The number of records sorted in memory per spill file.
+     */
+    public ExternalLinkResolver(Path spillPath, int spillRecordCount) throws IOException {
+        this.spillPath = Files.createTempDirectory(spillPath, "links-");
+        this.titleBuffer = new TitleRecord[spillRecordCount];
+        this.pairBuffer = new long[spillRecordCount];
+    }
+
+    // A run is the number of records, then the records.
+    private static DataOutputStream openRunOutput(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private static DataInputStream openRunInput(Path run) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private void addTitleRecord(TitleRecord record) throws IOException {
+        titleBuffer[titleCount++] = record;
+        if (titleCount == titleBuffer.length) {
+            spillTitles();
+        }
+    }
+
+    private void spillTitles() throws IOException {
+        Arrays.sort(titleBuffer, 0, titleCount);
+
+        Path run = Files.createTempFile(spillPath, "title-", ".run");
+        try (DataOutputStream output = openRunOutput(run)) {
+            output.writeInt(titleCount);
+            for (int i = 0; i < titleCount; i++) {
+                byte[] title = titleBuffer[i].title.getBytes(StandardCharsets.UTF_8);
+                output.writeByte(titleBuffer[i].kind);
+                output.writeInt(titleBuffer[i].id);
+                output.writeInt(title.length);
+                output.write(title);
+                titleBuffer[i] = null;
+            }
+        }
+
+        titleRuns.add(run);
+        titleCount = 0;
+    }
+
+    private void addPair(int sourceId, int targetId) throws IOException {
+        pairBuffer[pairCount++] = ((long) sourceId << 32) | (targetId & 0xFFFFFFFFL);
+        if (pairCount == pairBuffer.length) {
+            spillPairs();
+        }
+    }
+
+    private void spillPairs() throws IOException {
+        Arrays.sort(pairBuffer, 0, pairCount);
+
+        Path run = Files.createTempFile(spillPath, "pair-", ".run");
+        try (DataOutputStream output = openRunOutput(run)) {
+            output.writeInt(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+                output.writeLong(pairBuffer[i]);
+            }
+        }
+
+        pairRuns.add(run);
+        pairCount = 0;
+    }
+
+    @Override
+    public synchronized void add(int id, String title, String[] outLinks) throws IOException {
+        addTitleRecord(new TitleRecord(title, PAGE, id));
+        for (String outLink : outLinks) {
+            addTitleRecord(new TitleRecord(outLink, LINK, id));
+        }
+    }
+
+    // Merge the title runs, turning the links to exported pages into pairs.
+    private void joinTitles() throws IOException {
+        spillTitles();
+
+        List<TitleRunReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<TitleRunReader> queue = new PriorityQueue<>(Math.max(titleRuns.size(), 1),
+                    Comparator.comparing((TitleRunReader r) -> r.current));
+            for (Path run : titleRuns) {
+                TitleRunReader reader = new TitleRunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            String pageTitle = null;
+            int pageId = -1;
+            while (!queue.isEmpty()) {
+                TitleRunReader reader = queue.poll();
+                TitleRecord record = reader.current;
+
+                if (record.kind == PAGE) {
+                    pageTitle = record.title;
+                    pageId = record.id;
+                } else if (record.title.equals(pageTitle)) {
+                    addPair(record.id, pageId);
+                }
+
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (TitleRunReader reader : readers) {
+                reader.close();
+            }
+        }
+
+        spillPairs();
+    }
+
+    @Override
+    public void resolve(LinkConsumer consumer) throws IOException {
+        joinTitles();
+
+        List<PairRunReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<PairRunReader> queue = new PriorityQueue<>(Math.max(pairRuns.size(), 1),
+                    Comparator.comparingLong((PairRunReader r) -> r.current));
+            for (Path run : pairRuns) {
+                PairRunReader reader = new PairRunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            int sourceId = -1;
+            int[] links = new int[16];
+            int numOfLinks = 0;
+            while (!queue.isEmpty()) {
+                PairRunReader reader = queue.poll();
+                int pairSourceId = (int) (reader.current >>> 32);
+                int pairTargetId = (int) reader.current;
+
+                if (pairSourceId != sourceId) {
+                    if (numOfLinks > 0) {
+                        consumer.accept(sourceId, links, numOfLinks);
+                    }
+                    sourceId = pairSourceId;
+                    numOfLinks = 0;
+                }
+
+                if (numOfLinks == links.length) {
+                    links = Arrays.copyOf(links, links.length * 2);
+                }
+                links[numOfLinks++] = pairTargetId;
+
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            if (numOfLinks > 0) {
+                consumer.accept(sourceId, links, numOfLinks);
+            }
+        } finally {
+            for (PairRunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Path run : titleRuns) {
+            Files.deleteIfExists(run);
+        }
+        for (Path run : pairRuns) {
+            Files.deleteIfExists(run);
+        }
+        Files.deleteIfExists(spillPath);
+    }
+}
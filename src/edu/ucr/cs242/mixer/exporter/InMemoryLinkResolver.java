@@ -0,0 +1,58 @@
+package edu.ucr.cs242.mixer.exporter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolve links with hash maps of the whole corpus, the fast path when it fits in heap.
+ */
+public class InMemoryLinkResolver implements LinkResolver {
+    private final Map<String, Integer> titleToId = new HashMap<>();
+    // [id] -> outgoing link titles
+    private String[][] outgoingLinks = new String[1024][];
+
+    @Override
+    public synchronized void add(int id, String title, String[] outLinks) {
+        titleToId.put(title, id);
+
+        if (id >= outgoingLinks.length) {
+            outgoingLinks = Arrays.copyOf(outgoingLinks, Math.max(outgoingLinks.length * 2, id + 1));
+        }
+        outgoingLinks[id] = outLinks;
+    }
+
+    @Override
+    public void resolve(LinkConsumer consumer) throws IOException {
+        int[] links = new int[16];
+
+        for (int id = 0; id < outgoingLinks.length; id++) {
+            String[] outLinks = outgoingLinks[id];
+            if (outLinks == null) {
+                continue;
+            }
+            if (outLinks.length > links.length) {
+                links = new int[outLinks.length];
+            }
+
+            int numOfLinks = 0;
+            for (String outLink : outLinks) {
+                Integer linkId = titleToId.get(outLink);
+                if (linkId != null) {
+                    links[numOfLinks++] = linkId;
+                }
+            }
+
+            if (numOfLinks > 0) {
+                consumer.accept(id, links, numOfLinks);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        titleToId.clear();
+        outgoingLinks = new String[0][];
+    }
+}
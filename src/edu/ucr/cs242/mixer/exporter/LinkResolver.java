@@ -0,0 +1,37 @@
+package edu.ucr.cs242.mixer.exporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Resolve the outgoing link titles of all pages into page ids, for the link.json output.
+ */
+public interface LinkResolver extends Closeable {
+    /**
+     * Receive the resolved outgoing links of a page.
+     */
+    @FunctionalInterface
+    interface LinkConsumer {
+        /**
+         * @param id         The page id.
+         * @param links      The ids of the linked pages, only the first `numOfLinks` are valid.
+         * @param numOfLinks The number of linked pages, always positive.
+         */
+        void accept(int id, int[] links, int numOfLinks) throws IOException;
+    }
+
+    /**
+     * Add a page with its outgoing links, may be called by several threads at the same time.
+     * Every page must be added before {@link #resolve}.
+     * @param id       The page id.
+     * @param title    The page title.
+     * @param outLinks The titles of the linked pages, which may not be exported.
+     */
+    void add(int id, String title, String[] outLinks) throws IOException;
+
+    /**
+     * Resolve the links, dropping those to pages not exported.
+     * @param consumer Receives the pages having any resolved link, in ascending id order.
+     */
+    void resolve(LinkConsumer consumer) throws IOException;
+}
@@ -1,46 +1,101 @@
 package edu.ucr.cs242.mixer.exporter;
 
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.pagerank.LinkGraph;
+import edu.ucr.cs242.mixer.pagerank.LinkGraphWriter;
 import org.apache.commons.cli.*;
-import org.json.JSONObject;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 public class SQLExporter {
     /**
-     * The number of records to be batch-read per SQL transaction.
+     * The buffer size (in chars) of each output file.
      */
-    public static final int BATCH_READ_COUNT = 50;
+    public static final int OUTPUT_BUFFER_SIZE = 1 << 20;
 
     /**
-     * The SQL query statement.
+     * The number of records sorted in memory per spill file, when links are resolved externally.
      */
-    public static final String SQL_QUERY = "SELECT title, content, categories, outLinks FROM pages LIMIT ? OFFSET ?";
+    public static final int SPILL_RECORD_COUNT = 1 << 20;
 
+    /**
+     * The SQL query statement of the rowid right before a partition.
+     */
+    public static final String SQL_PARTITION_QUERY = "SELECT rowid FROM pages ORDER BY rowid LIMIT 1 OFFSET ?";
+
+    /**
+     * Count the bytes passing through, for the throughput report.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        // Only written by the thread writing the file, read by any reporting thread.
+        private volatile long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final int numOfThreads;
+    private final boolean keepShards;
+    private final String jdbcUrl;
     private final Connection dbConnection;
     private final String jsonOutputPath;
+    private final boolean compressOutput;
+    private final int maxInMemoryPages;
+    private final boolean writeLinkGraph;
     private final int numOfPages;
+    // The (uncompressed) JSON output of all files, only added to while no export thread is running.
+    private final List<CountingOutputStream> outputs = new ArrayList<>();
+    private final AtomicInteger exportedCount = new AtomicInteger(0);
+    private LocalDateTime startAt;
 
     /**
      * Construct an SQLExporter with given settings.
-     * @param dbConnection   The active database connection.
-     * @param jsonOutputPath The folder to output JSON format data.
+     * @param numOfThreads     The number of threads for exporting.
+     * @param keepShards       Whether keep the output of each thread in its own file, instead of merging them.
+     * @param jdbcUrl          The JDBC url of the database, to which each export thread opens its own connection.
+     * @param dbConnection     The active database connection.
+     * @param jsonOutputPath   The folder to output JSON format data.
+     * @param compressOutput   Whether gzip the output files (with `.gz` suffix).
+     * @param maxInMemoryPages The max number of pages to resolve links in memory, otherwise with spill files.
+     * @param writeLinkGraph   Whether also write the links as a binary link graph (link.bin) for PageRank.
      */
-    public SQLExporter(Connection dbConnection, String jsonOutputPath) {
+    public SQLExporter(int numOfThreads, boolean keepShards, String jdbcUrl, Connection dbConnection,
+                       String jsonOutputPath, boolean compressOutput, int maxInMemoryPages, boolean writeLinkGraph) {
+        this.numOfThreads = numOfThreads;
+        this.keepShards = keepShards;
+        this.jdbcUrl = jdbcUrl;
         this.dbConnection = dbConnection;
         this.jsonOutputPath = jsonOutputPath;
+        this.compressOutput = compressOutput;
+        this.maxInMemoryPages = maxInMemoryPages;
+        this.writeLinkGraph = writeLinkGraph;
 
         numOfPages = Utility.fetchPageCount(dbConnection);
         // Check number of pages we have.
@@ -50,107 +105,156 @@ public class SQLExporter {
         }
     }
 
-    private void reportProgress(LocalDateTime startAt, int count, boolean links) {
-        if (count == numOfPages || count % 1000 == 0) {
-            System.out.format("%sSQLExporter has exported %d pages%s, %.2f%% completed. Elapsed time: %s.%n",
-                    count == numOfPages ? "Summary: " : "",
-                    count,
-                    links ? "' outgoing links" : "",
-                    count * 100.0f / numOfPages, Utility.elapsedTime(startAt, LocalDateTime.now()));
-        }
+    private Path outputFile(String fileName) {
+        return Paths.get(jsonOutputPath, compressOutput ? fileName + ".gz" : fileName);
     }
 
-    public void start() {
-        LocalDateTime startAt = LocalDateTime.now();
-        System.out.println("SQLExporter started at " + startAt.toLocalTime() + ". " +
-                "Pages to export: " + numOfPages + ".");
+    // The output file of a thread, e.g. data-00000.json
+    private static String shardName(String fileName, int threadId) {
+        return String.format("%s-%05d.json", fileName.substring(0, fileName.lastIndexOf('.')), threadId);
+    }
 
-        Map<String, Integer> titleToId = new HashMap<>();
-        Map<String, List<String>> outgoingLinks = new HashMap<>();
+    private Writer openOutput(String fileName) throws IOException {
+        OutputStream file = new FileOutputStream(outputFile(fileName).toString());
+        CountingOutputStream output = new CountingOutputStream(
+                compressOutput ? new GZIPOutputStream(file, 1 << 16) : new BufferedOutputStream(file, 1 << 16));
+        outputs.add(output);
+        return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+    }
 
-        try {
-            int writtenCount = 0;
-            FileOutputStream dataOutput = new FileOutputStream(Paths.get(jsonOutputPath, "data.json").toString());
-            FileOutputStream indexOutput = new FileOutputStream(Paths.get(jsonOutputPath, "index.json").toString());
-            FileOutputStream linkOutput = new FileOutputStream(Paths.get(jsonOutputPath, "link.json").toString());
+    // Concatenate the output of all threads in order. Concatenated gzip files are still a valid gzip file.
+    private void mergeShards(String fileName) throws IOException {
+        if (numOfThreads == 1) {
+            Files.move(outputFile(shardName(fileName, 0)), outputFile(fileName), StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
 
-            while (writtenCount < numOfPages) {
-                try (PreparedStatement statement = dbConnection.prepareStatement(SQL_QUERY)) {
-                    statement.setInt(1, Math.min(BATCH_READ_COUNT, numOfPages - writtenCount));
-                    statement.setInt(2, writtenCount);
+        try (OutputStream output = Files.newOutputStream(outputFile(fileName))) {
+            for (int i = 0; i < numOfThreads; i++) {
+                Path shard = outputFile(shardName(fileName, i));
+                Files.copy(shard, output);
+                Files.delete(shard);
+            }
+        }
+    }
 
+    private void report(int count, boolean links, boolean summary) {
+        double seconds = Math.max(Duration.between(startAt, LocalDateTime.now()).toMillis(), 1) / 1000.0;
+        long bytes = outputs.stream().mapToLong(o -> o.count).sum();
+
+        System.out.format("%sSQLExporter has exported %d pages%s, %.2f%% completed. " +
+                        "Throughput: %.0f rows/s, %.2f MB/s. Elapsed time: %s.%n",
+                summary ? "Summary: " : "",
+                count,
+                links ? "' outgoing links" : "",
+                count * 100.0f / numOfPages,
+                count / seconds, bytes / 1048576.0 / seconds,
+                Utility.elapsedTime(startAt, LocalDateTime.now()));
+    }
+
+    /**
+     * For thread's invoke of reporting its progress.
+     * @param count The count of pages that has been exported during the last batch-read period.
+     */
+    public void reportProgress(int count) {
+        int after = exportedCount.addAndGet(count);
+        if (after / 1000 != (after - count) / 1000) {
+            report(after, false, false);
+        }
+    }
+
+    // The rowid right before the first page of each thread.
+    private long[] fetchPartitionStarts() throws SQLException {
+        long[] afterRowIds = new long[numOfThreads];
+
+        try (PreparedStatement statement = dbConnection.prepareStatement(SQL_PARTITION_QUERY)) {
+            for (int i = 0, pageStartIndex = 0; i < numOfThreads; i++) {
+                if (pageStartIndex == 0) {
+                    afterRowIds[i] = Long.MIN_VALUE;
+                } else {
+                    statement.setInt(1, pageStartIndex - 1);
                     try (ResultSet result = statement.executeQuery()) {
-                        while (result.next()) {
-                            String title = result.getString("title");
-                            String content = result.getString("content");
-                            List<String> categories =
-                                    Arrays.stream(result.getString("categories").split(Pattern.quote("|")))
-                                            .collect(Collectors.toList());
-                            List<String> outLinks =
-                                    Arrays.stream(result.getString("outLinks").split(Pattern.quote("|")))
-                                            .collect(Collectors.toList());
-
-                            JSONObject object = new JSONObject()
-                                    .put("id", writtenCount)
-                                    .put("title", title)
-                                    .put("content", content)
-                                    .put("categories", categories);
-
-                            dataOutput.write(object.toString().getBytes("utf-8"));
-                            dataOutput.write('\n');
-                            dataOutput.flush();
-
-                            object = new JSONObject()
-                                    .put("id", writtenCount)
-                                    .put("title", title);
-
-                            indexOutput.write(object.toString().getBytes("utf-8"));
-                            indexOutput.write('\n');
-                            indexOutput.flush();
-
-                            titleToId.put(title, writtenCount);
-                            outgoingLinks.put(title, outLinks);
-
-                            ++writtenCount;
-                        }
+                        afterRowIds[i] = result.next() ? result.getLong(1) : Long.MAX_VALUE;
                     }
-
-                    reportProgress(startAt, writtenCount, false);
-                } catch (SQLException e) {
-                    System.out.println("SQLExporter throws an SQLException.");
-                    e.printStackTrace();
                 }
+                pageStartIndex += Utility.calculatePartition(numOfPages, numOfThreads, i);
             }
+        }
 
-            writtenCount = 0;
-            for (Map.Entry<String, Integer> entry : titleToId.entrySet()) {
-                List<Integer> links = outgoingLinks.get(entry.getKey()).stream()
-                        .map(titleToId::get)
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-
-                if (!links.isEmpty()) {
-                    JSONObject object = new JSONObject()
-                            .put("id", entry.getValue())
-                            .put("links", links);
-
-                    linkOutput.write(object.toString().getBytes("utf-8"));
-                    linkOutput.write('\n');
-                    linkOutput.flush();
-                }
+        return afterRowIds;
+    }
 
-                ++writtenCount;
-                reportProgress(startAt, writtenCount, true);
+    private void startThreads(LinkResolver linkResolver) throws IOException, SQLException {
+        long[] afterRowIds = fetchPartitionStarts();
+        ExportThread[] threads = new ExportThread[numOfThreads];
+
+        // Open all outputs before any thread starts, since running threads read the list of outputs to report.
+        for (int i = 0, pageStartIndex = 0; i < numOfThreads; i++) {
+            int partition = Utility.calculatePartition(numOfPages, numOfThreads, i);
+            threads[i] = new ExportThread(this, i, afterRowIds[i], pageStartIndex, partition, jdbcUrl,
+                    openOutput(shardName("data.json", i)), openOutput(shardName("index.json", i)), linkResolver);
+            pageStartIndex += partition;
+        }
+
+        for (ExportThread thread : threads) {
+            thread.start();
+        }
+
+        Utility.waitThreads(threads);
+        report(exportedCount.get(), false, true);
+    }
+
+    public void start() {
+        startAt = LocalDateTime.now();
+        System.out.println("SQLExporter started at " + startAt.toLocalTime() + ". " +
+                "Pages to export: " + numOfPages + ". Threads: " + numOfThreads + ".");
+
+        try (LinkResolver linkResolver = numOfPages <= maxInMemoryPages ? new InMemoryLinkResolver() :
+                new ExternalLinkResolver(Paths.get(jsonOutputPath), SPILL_RECORD_COUNT)) {
+
+            startThreads(linkResolver);
+            if (!keepShards) {
+                mergeShards("data.json");
+                mergeShards("index.json");
             }
 
-            dataOutput.close();
-            indexOutput.close();
-            linkOutput.close();
+            try (Writer linkOutput = openOutput("link.json");
+                 LinkGraphWriter graphOutput = writeLinkGraph ? new LinkGraphWriter(
+                         Paths.get(jsonOutputPath, LinkGraph.LINK_GRAPH_FILE), numOfPages) : null) {
+                int[] linkedCount = { 0 };
+                linkResolver.resolve((id, links, numOfLinks) -> {
+                    writeLinks(linkOutput, id, links, numOfLinks);
+                    if (graphOutput != null) {
+                        graphOutput.add(id, links, numOfLinks);
+                    }
+                    if (++linkedCount[0] % 1000 == 0) {
+                        report(linkedCount[0], true, false);
+                    }
+                });
+                report(linkedCount[0], true, true);
+            }
+        } catch (SQLException e) {
+            System.out.println("SQLExporter throws an SQLException.");
+            e.printStackTrace();
         } catch (IOException e) {
             System.out.println("SQLExporter throws an IOException: " + e.getMessage());
         }
     }
 
+    // {"id":<id>,"links":[<id>...]}
+    private static void writeLinks(Writer output, int id, int[] links, int numOfLinks) throws IOException {
+        output.write("{\"id\":");
+        output.write(Integer.toString(id));
+        output.write(",\"links\":[");
+        for (int i = 0; i < numOfLinks; i++) {
+            if (i > 0) {
+                output.write(',');
+            }
+            output.write(Integer.toString(links[i]));
+        }
+        output.write("]}\n");
+    }
+
     private static void printMessage(String message) {
         System.out.println("exporter: " + message);
     }
@@ -168,6 +272,9 @@ public class SQLExporter {
     }
 
     public static void main(String args[]) throws SQLException, ClassNotFoundException {
+        final int NUMBER_OF_THREADS = 1;
+        final int MAX_IN_MEMORY_PAGES = 1000000;
+
         Options options = new Options();
         options.addOption(Option.builder("l")
                 .longOpt("log-output")
@@ -176,6 +283,31 @@ public class SQLExporter {
                 .numberOfArgs(1)
                 .build());
 
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .argName("NUM OF THREADS")
+                .desc("the number of threads for exporting, each exporting a range of pages " +
+                        "(default: " + NUMBER_OF_THREADS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("s", "shards", false,
+                "keep the data and index output of each thread in its own file (data-00000.json ...) " +
+                        "instead of merging them");
+
+        options.addOption(Option.builder("m")
+                .longOpt("in-memory-pages")
+                .argName("NUM OF PAGES")
+                .desc("resolve links in memory if there are at most this many pages, otherwise with " +
+                        "sorted spill files in <json-output-path> (default: " + MAX_IN_MEMORY_PAGES + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("g", "link-graph", false,
+                "also write the links as " + LinkGraph.LINK_GRAPH_FILE + ", a binary link graph read by pagerank");
+
+        options.addOption("z", "gzip", false, "gzip the JSON output files (with .gz suffix)");
+
         options.addOption("h", "help", false, "print a synopsis of standard options");
 
         try {
@@ -203,19 +335,34 @@ public class SQLExporter {
                 printUsage();
             }
 
-            Optional<Connection> dbConnection = Utility.getConnection(argList.get(0));
-            if (!dbConnection.isPresent()) {
-                printMessage("invalid JDBC url");
-                printUsage();
-            } else {
-                Path jsonOutputPath = Paths.get(argList.get(1));
-                if (!Files.exists(jsonOutputPath) || !Files.isDirectory(jsonOutputPath)) {
-                    printMessage("invalid JSON output path (not exist or not directory)");
-                    printUsage();
+            try {
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                if (numOfThreads <= 0) {
+                    throw new NumberFormatException("The number of threads must be positive.");
                 }
+                int maxInMemoryPages = Integer.parseInt(
+                        cmd.getOptionValue("in-memory-pages", String.valueOf(MAX_IN_MEMORY_PAGES)));
+
+                Optional<Connection> dbConnection = Utility.getConnection(argList.get(0));
+                if (!dbConnection.isPresent()) {
+                    printMessage("invalid JDBC url");
+                    printUsage();
+                } else {
+                    Path jsonOutputPath = Paths.get(argList.get(1));
+                    if (!Files.exists(jsonOutputPath) || !Files.isDirectory(jsonOutputPath)) {
+                        printMessage("invalid JSON output path (not exist or not directory)");
+                        printUsage();
+                    }
 
-                new SQLExporter(dbConnection.get(), jsonOutputPath.toString()).start();
-                dbConnection.get().close();
+                    new SQLExporter(numOfThreads, cmd.hasOption("shards"), argList.get(0), dbConnection.get(),
+                            jsonOutputPath.toString(), cmd.hasOption("gzip"), maxInMemoryPages,
+                            cmd.hasOption("link-graph")).start();
+                    dbConnection.get().close();
+                }
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
             }
         } catch (ParseException e) {
             // Lower the first letter, which as default is an upper letter.
@@ -1,90 +1,143 @@
 package edu.ucr.cs242.mixer.importer;
 
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.PostingListWriter;
+import edu.ucr.cs242.mixer.mapreduce.IndexWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Import the posting lists from the Hadoop's index output, either the text lines of
+ * `term\tdocId:f,f,f|p,p,...;...\tdf,df,df\tcf,cf,cf` (the term statistics are not imported), or the SequenceFiles
+ * of term to binary posting list (mapreduce --sequence-file), which are stored as is.
+ * The output may be a single file, or the folder of the job output with a part file per reducer.
+ */
 public class DataImportThread extends Thread {
+    private static final byte[] SEQUENCE_FILE_MAGIC = "SEQ".getBytes(StandardCharsets.US_ASCII);
+
     private final DB database;
     private final String hadoopIndexOutputPath;
 
+    private LocalDateTime startAt;
+    private int indexedCount;
+
     /**
      * Construct a data import thread, with given settings.
      * @param database              The LevelDB object.
-     * @param hadoopIndexOutputPath The file name to the Hadoop's index output.
+     * @param hadoopIndexOutputPath The file name to the Hadoop's index output, or its folder.
      */
     public DataImportThread(DB database, String hadoopIndexOutputPath) {
         this.database = database;
         this.hadoopIndexOutputPath = hadoopIndexOutputPath;
     }
 
+    private static IndexWritable parsePosting(String compact) {
+        // In a form of `docId:freq,freq,freq|pos,pos,...`
+        String[] index = compact.split(":");
+        int docId = Integer.parseInt(index[0]);
+
+        String[] freqPos = index[1].split(Pattern.quote("|"));
+        int[] frequency = Arrays.stream(freqPos[0].split(",")).mapToInt(Integer::parseInt).toArray();
+        int[] position = freqPos.length < 2 || freqPos[1].isEmpty() ? new int[0] :
+                Arrays.stream(freqPos[1].split(",")).mapToInt(Integer::parseInt).toArray();
+
+        return new IndexWritable(docId, frequency, position);
+    }
+
     private void processDataLine(String dataLine) {
         String[] data = dataLine.split("\t");
         String keyword = data[0];
 
-        JSONArray value = new JSONArray();
-        Arrays.stream(data[1].split(";")).forEach(compact -> {
-            String[] index = compact.split(":");
-            String docId = index[0];
-
-            String[] freqPos = index[1].split(Pattern.quote("|"));
-            List<Integer> frequency = Arrays.stream(freqPos[0].split(","))
-                    .map(Integer::parseInt).collect(Collectors.toList());
+        // The binary format requires the postings in docId order. The index job sorts them, while the output of
+        // older jobs does not, so keep sorting here; it takes about linear time on sorted input.
+        List<IndexWritable> postings = Arrays.stream(data[1].split(";"))
+                .map(DataImportThread::parsePosting)
+                .sorted(Comparator.comparingInt(IndexWritable::getDocId))
+                .collect(Collectors.toList());
 
-            String[] pos = freqPos[1].split(",");
-            List<List<Integer>> position = new ArrayList<>();
-
-            for (int count = 0, i = 0; i < frequency.size(); i++) {
-                int freq = frequency.get(i);
-                position.add(Arrays.stream(pos).skip(count).limit(freq)
-                        .map(Integer::parseInt).collect(Collectors.toList()));
-                count += freq;
-            }
+        PostingListWriter writer = new PostingListWriter();
+        postings.forEach(p -> writer.add(p.getDocId(), p.getFrequency(), p.getPosition()));
 
-            value.put(new JSONObject()
-                    .put(docId, new JSONObject()
-                            .put("frequency", frequency)
-                            .put("position", position)
-                    ));
-        });
-
-        database.put(JniDBFactory.bytes(keyword), JniDBFactory.bytes(value.toString()));
+        database.put(JniDBFactory.bytes(keyword), writer.toByteArray());
     }
 
-    @Override
-    public void run() {
-        LocalDateTime startAt = LocalDateTime.now();
-        System.out.println("DataImportThread started at " + startAt.toLocalTime() + ".");
+    private void countKeyword() {
+        ++indexedCount;
+        if (indexedCount % 1000 == 0) {
+            System.out.format("DataImportThread has imported %d keywords. Elapsed time: %s.%n",
+                    indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+        }
+    }
 
-        int indexedCount = 0;
+    private static boolean isSequenceFile(File file) throws IOException {
+        byte[] magic = new byte[SEQUENCE_FILE_MAGIC.length];
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            inputStream.readFully(magic);
+            return Arrays.equals(magic, SEQUENCE_FILE_MAGIC);
+        } catch (EOFException e) {
+            return false;
+        }
+    }
 
-        try (BufferedReader dataReader = new BufferedReader(new FileReader(new File(hadoopIndexOutputPath)))) {
+    private void importTextFile(File file) throws IOException {
+        try (BufferedReader dataReader = new BufferedReader(new FileReader(file))) {
 
             String dataLine;
             while ((dataLine = dataReader.readLine()) != null) {
                 try {
                     processDataLine(dataLine);
-
-                    ++indexedCount;
-                    if (indexedCount % 1000 == 0) {
-                        System.out.format("DataImportThread has imported %d keywords. Elapsed time: %s.%n",
-                                indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
-                    }
+                    countKeyword();
                 } catch (Exception e) {
                     System.out.println("DataImportThread throws an Exception.");
                     e.printStackTrace();
                 }
             }
+        }
+    }
+
+    private void importSequenceFile(File file) throws IOException {
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(new Configuration(),
+                SequenceFile.Reader.file(new Path(file.toURI())))) {
+            Text keyword = new Text();
+            BytesWritable postings = new BytesWritable();
+
+            // The values are already in the binary format of the posting lists.
+            while (reader.next(keyword, postings)) {
+                database.put(keyword.copyBytes(), postings.copyBytes());
+                countKeyword();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        startAt = LocalDateTime.now();
+        System.out.println("DataImportThread started at " + startAt.toLocalTime() + ".");
+
+        indexedCount = 0;
+
+        try {
+            for (File file : Utility.listJobOutput(hadoopIndexOutputPath)) {
+                if (isSequenceFile(file)) {
+                    importSequenceFile(file);
+                } else {
+                    importTextFile(file);
+                }
+            }
 
             System.out.format("Summary: DataImportThread has imported %d keywords. Elapsed time: %s.%n",
                     indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
@@ -1,6 +1,9 @@
 package edu.ucr.cs242.mixer.importer;
 
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
+import edu.ucr.cs242.mixer.index.PostingList;
+import edu.ucr.cs242.mixer.index.Tokenizer;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
 import org.json.JSONObject;
@@ -9,31 +12,44 @@ import java.io.*;
 import java.math.BigInteger;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.StringTokenizer;
 import java.util.stream.Collectors;
 
 public class DocumentLengthImportThread extends Thread {
     private final DB database;
+    private final String databasePath;
     private final String jsonOutputPath;
 
+    // <FieldId, [docId -> length]>, for the sidecar file.
+    private final int[][] docLength = new int[PostingList.NUM_OF_FIELDS][1024];
+    private int numOfDocs = 0;
+
     /**
      * Construct a document length import thread, with given settings.
      * @param database       The LevelDB object.
+     * @param databasePath   The path to LevelDB database, where the sidecar file is written.
      * @param jsonOutputPath The folder to the JSON output.
      */
-    public DocumentLengthImportThread(DB database, String jsonOutputPath) {
+    public DocumentLengthImportThread(DB database, String databasePath, String jsonOutputPath) {
         this.database = database;
+        this.databasePath = databasePath;
         this.jsonOutputPath = jsonOutputPath;
     }
 
     private long putLength(int docId, int fieldId, String text) {
-        long length = new StringTokenizer(text).countTokens();
+        int length = Tokenizer.countTokens(text);
 
         // <docId, length>
         database.put(JniDBFactory.bytes("__docLength_" + docId + "_" + fieldId),
                 JniDBFactory.bytes(String.valueOf(length)));
 
+        if (docId >= docLength[fieldId].length) {
+            docLength[fieldId] = Arrays.copyOf(docLength[fieldId], Math.max(docLength[fieldId].length * 2, docId + 1));
+        }
+        docLength[fieldId][docId] = length;
+        numOfDocs = Math.max(numOfDocs, docId + 1);
+
         return length;
     }
 
@@ -44,8 +60,7 @@ public class DocumentLengthImportThread extends Thread {
 
         int indexedCount = 0;
 
-        try (BufferedReader dataReader = new BufferedReader(
-                new FileReader(Paths.get(jsonOutputPath, "data.json").toString()))) {
+        try (BufferedReader dataReader = Utility.openJsonInput(jsonOutputPath, "data.json")) {
 
             // 0 - title, 1 - content, 2 - categories
             long[] totalDocLength = { 0, 0, 0 };
@@ -56,10 +71,10 @@ public class DocumentLengthImportThread extends Thread {
                     JSONObject dataJson = new JSONObject(dataLine);
 
                     int docId = dataJson.getInt("id");
-                    String title = dataJson.getString("title").toLowerCase();
-                    String content = dataJson.getString("content").toLowerCase();
+                    String title = dataJson.getString("title");
+                    String content = dataJson.getString("content");
                     String categories = dataJson.getJSONArray("categories").toList().stream()
-                            .map(Objects::toString).map(String::toLowerCase)
+                            .map(Objects::toString)
                             .collect(Collectors.joining(" "));
 
                     totalDocLength[0] += putLength(docId, 0, title);
@@ -85,6 +100,8 @@ public class DocumentLengthImportThread extends Thread {
             }
 
             database.put(JniDBFactory.bytes("__docCount"), JniDBFactory.bytes(String.valueOf(indexedCount)));
+            DocumentStatistics.writeDocLength(Paths.get(databasePath, DocumentStatistics.DOC_LENGTH_FILE),
+                    numOfDocs, docLength);
             System.out.format("Summary: DocumentLengthImportThread has imported %d pages. Elapsed time: %s.%n",
                     indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
         } catch (FileNotFoundException e) {
@@ -0,0 +1,344 @@
+package edu.ucr.cs242.mixer.importer;
+
+import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.PostingListWriter;
+import edu.ucr.cs242.mixer.mapreduce.DocumentMapper;
+import edu.ucr.cs242.mixer.mapreduce.IndexWritable;
+import edu.ucr.cs242.mixer.mapreduce.PostingBlockWritable;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.WriteBatch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Build the posting lists from the SQLExporter's data.json in process, instead of importing the Hadoop's index output.
+ *
+ * The documents are read in batches, and mapped into postings by a fork-join pool. Each worker thread keeps its own
+ * in-memory segment of term to posting block, so no locking is needed. When a segment outgrows its share of the
+ * memory budget, it is spilled into a term-ordered segment file, and started anew. The postings of a term in a
+ * segment are kept in docId order, by spilling the segment early should a thread get the documents out of order.
+ * At last the segment files and the segments left in memory are k-way merged term by term, and the docId-ordered
+ * postings of each term are stream-merged into its binary posting list, which is written into LevelDB, the same as
+ * {@link DataImportThread} does with the output of mapreduce. The terms being merged are bounded by bytes too, so the
+ * heap needed is about twice the budget at most, plus the postings of the largest term, regardless of the corpus size.
+ */
+public class IndexBuildThread extends Thread {
+    /**
+     * The number of documents mapped per task.
+     */
+    public static final int BATCH_DOCUMENT_COUNT = 1000;
+
+    /**
+     * The number of records to be batch-written per LevelDB write.
+     */
+    public static final int BATCH_WRITE_COUNT = 1000;
+
+    // The estimated memory of a term in a segment, besides its term and postings
+    private static final int TERM_OVERHEAD = 256;
+
+    // The postings of a worker thread, <term, postings>, and their estimated memory
+    private static class Segment {
+        private Map<String, PostingBlockWritable> postings = new HashMap<>();
+        private long size = 0;
+        // The last document mapped into the segment
+        private int lastDocId = Integer.MIN_VALUE;
+    }
+
+    private final DB database;
+    private final String jsonOutputPath;
+    private final Path buildPath;
+    private Path segmentPath;
+    private final int numOfThreads;
+    private final long memoryLimit;
+
+    private final List<Segment> segments = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<Segment> segment = ThreadLocal.withInitial(() -> {
+        Segment s = new Segment();
+        segments.add(s);
+        return s;
+    });
+    private final ThreadLocal<DocumentMapper> documentMapper = ThreadLocal.withInitial(DocumentMapper::new);
+    private final List<Path> segmentFiles = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Construct an index build thread, with given settings.
+     * @param database       The LevelDB object.
+     * @param jsonOutputPath The folder to the JSON output, where data.json is.
+     * @param buildPath      The folder to create the folder of the spilled segment files in, deleted afterwards.
+     * @param numOfThreads   The number of threads to map the documents and to merge the segments.
+     * @param memoryLimit    The memory for the in-memory segments of all threads, in bytes.
+     */
+    public IndexBuildThread(DB database, String jsonOutputPath, String buildPath, int numOfThreads, long memoryLimit) {
+        this.database = database;
+        this.jsonOutputPath = jsonOutputPath;
+        this.buildPath = Paths.get(buildPath);
+        this.numOfThreads = numOfThreads;
+        this.memoryLimit = memoryLimit;
+    }
+
+    private void spill(Segment s) throws IOException {
+        Path file;
+        synchronized (segmentFiles) {
+            file = segmentPath.resolve(String.format("segment-%05d", segmentFiles.size()));
+            segmentFiles.add(file);
+        }
+
+        PostingSegment.write(file, s.postings);
+        System.out.format("IndexBuildThread has spilled %d keywords into %s.%n", s.postings.size(), file.getFileName());
+
+        // A new map, so the table of the old one is freed too.
+        s.postings = new HashMap<>();
+        s.size = 0;
+        s.lastDocId = Integer.MIN_VALUE;
+    }
+
+    private void mapDocuments(List<String> documents) {
+        Segment s = segment.get();
+        try {
+            for (String document : documents) {
+                documentMapper.get().map(document, (term, posting) -> {
+                    // A document before the last one, so spill to keep the postings of each term in docId order.
+                    if (posting.getDocId() < s.lastDocId) {
+                        spill(s);
+                    }
+                    s.lastDocId = posting.getDocId();
+
+                    PostingBlockWritable block = s.postings.get(term);
+                    if (block == null) {
+                        block = new PostingBlockWritable();
+                        s.postings.put(term, block);
+                        s.size += TERM_OVERHEAD + term.length() * 2;
+                    }
+
+                    int length = block.getLength();
+                    block.add(posting.getDocId(), posting.getFrequency(), posting.getPosition());
+                    s.size += block.getLength() - length;
+                });
+            }
+
+            if (s.size >= memoryLimit / numOfThreads) {
+                spill(s);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while mapping the documents.");
+        }
+    }
+
+    // Stream-merge the postings of a term in all segments, each in docId order, into its binary posting list.
+    private static byte[] mergeTerm(List<PostingBlockWritable> blocks) throws IOException {
+        PriorityQueue<PostingBlockWritable.Cursor> queue = new PriorityQueue<>(
+                blocks.size(), Comparator.comparingInt(cursor -> cursor.get().getDocId()));
+        for (PostingBlockWritable block : blocks) {
+            PostingBlockWritable.Cursor cursor = block.cursor();
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+
+        PostingListWriter writer = new PostingListWriter();
+        while (!queue.isEmpty()) {
+            PostingBlockWritable.Cursor cursor = queue.poll();
+            IndexWritable posting = cursor.get();
+            writer.add(posting.getDocId(), posting.getFrequency(), posting.getPosition());
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    private void mergeTerms(List<String> terms, List<List<PostingBlockWritable>> blocks,
+                            AtomicInteger indexedCount, LocalDateTime startAt) {
+        try (WriteBatch batch = database.createWriteBatch()) {
+            for (int i = 0; i < terms.size(); i++) {
+                try {
+                    batch.put(JniDBFactory.bytes(terms.get(i)), mergeTerm(blocks.get(i)));
+                } catch (Exception e) {
+                    System.out.println("IndexBuildThread throws an Exception on keyword `" + terms.get(i) + "`.");
+                    e.printStackTrace();
+                }
+            }
+            database.write(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        System.out.format("IndexBuildThread has imported %d keywords. Elapsed time: %s.%n",
+                indexedCount.addAndGet(terms.size()), Utility.elapsedTime(startAt, LocalDateTime.now()));
+    }
+
+    // Map all documents into the segments, spilling them as needed.
+    private int mapAll(ForkJoinPool pool, LocalDateTime startAt) throws IOException, InterruptedException, ExecutionException {
+        // Bound the batches read ahead of the workers.
+        Semaphore pending = new Semaphore(numOfThreads * 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        int mappedCount = 0;
+
+        try (BufferedReader dataReader = Utility.openJsonInput(jsonOutputPath, "data.json")) {
+            List<String> documents = new ArrayList<>(BATCH_DOCUMENT_COUNT);
+            String dataLine;
+            do {
+                dataLine = dataReader.readLine();
+                if (dataLine != null && !dataLine.isEmpty()) {
+                    documents.add(dataLine);
+                }
+
+                if (documents.size() == BATCH_DOCUMENT_COUNT || (dataLine == null && !documents.isEmpty())) {
+                    List<String> batch = documents;
+                    pending.acquire();
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            mapDocuments(batch);
+                        } finally {
+                            pending.release();
+                        }
+                    }));
+
+                    mappedCount += batch.size();
+                    if (mappedCount % (BATCH_DOCUMENT_COUNT * 10) == 0) {
+                        System.out.format("IndexBuildThread has read %d pages. Elapsed time: %s.%n",
+                                mappedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+                    }
+                    documents = new ArrayList<>(BATCH_DOCUMENT_COUNT);
+                }
+            } while (dataLine != null);
+        }
+
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        return mappedCount;
+    }
+
+    // K-way merge the segments by term, and write the posting lists in chunks of one LevelDB batch write each.
+    // A chunk is up to its share of the memory budget, so the chunks in flight take about the budget at most.
+    private int mergeAll(ForkJoinPool pool, LocalDateTime startAt) throws IOException, InterruptedException, ExecutionException {
+        List<PostingSegment.Cursor> cursors = new ArrayList<>();
+        Semaphore pending = new Semaphore(numOfThreads * 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        AtomicInteger indexedCount = new AtomicInteger();
+        long chunkLimit = Math.max(1, memoryLimit / (numOfThreads * 2L));
+
+        try {
+            for (Path file : segmentFiles) {
+                cursors.add(PostingSegment.open(file));
+            }
+            for (Segment s : segments) {
+                cursors.add(PostingSegment.open(s.postings));
+            }
+
+            PriorityQueue<PostingSegment.Cursor> queue = new PriorityQueue<>(
+                    Math.max(1, cursors.size()), Comparator.comparing(PostingSegment.Cursor::getTerm));
+            for (PostingSegment.Cursor cursor : cursors) {
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+
+            List<String> terms = new ArrayList<>(BATCH_WRITE_COUNT);
+            List<List<PostingBlockWritable>> blocks = new ArrayList<>(BATCH_WRITE_COUNT);
+            long chunkSize = 0;
+            while (!queue.isEmpty()) {
+                String term = queue.peek().getTerm();
+                List<PostingBlockWritable> termBlocks = new ArrayList<>();
+                while (!queue.isEmpty() && queue.peek().getTerm().equals(term)) {
+                    PostingSegment.Cursor cursor = queue.poll();
+                    termBlocks.add(cursor.getBlock());
+                    chunkSize += cursor.getBlock().getLength();
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+
+                terms.add(term);
+                blocks.add(termBlocks);
+                chunkSize += TERM_OVERHEAD + term.length() * 2;
+                if (terms.size() == BATCH_WRITE_COUNT || chunkSize >= chunkLimit || queue.isEmpty()) {
+                    List<String> chunkTerms = terms;
+                    List<List<PostingBlockWritable>> chunkBlocks = blocks;
+                    pending.acquire();
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            mergeTerms(chunkTerms, chunkBlocks, indexedCount, startAt);
+                        } finally {
+                            pending.release();
+                        }
+                    }));
+
+                    terms = new ArrayList<>(BATCH_WRITE_COUNT);
+                    blocks = new ArrayList<>(BATCH_WRITE_COUNT);
+                    chunkSize = 0;
+                }
+            }
+
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            for (PostingSegment.Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+
+        return indexedCount.get();
+    }
+
+    /**
+     * The number of segment files spilled, after the thread finished.
+     */
+    int getNumOfSpills() {
+        return segmentFiles.size();
+    }
+
+    @Override
+    public void run() {
+        LocalDateTime startAt = LocalDateTime.now();
+        System.out.println("IndexBuildThread started at " + startAt.toLocalTime() + ".");
+
+        ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+
+        try {
+            segmentPath = Files.createTempDirectory(buildPath, "segments-");
+
+            int mappedCount = mapAll(pool, startAt);
+            System.out.format("IndexBuildThread has mapped %d pages, with %d segments spilled. Elapsed time: %s.%n",
+                    mappedCount, segmentFiles.size(), Utility.elapsedTime(startAt, LocalDateTime.now()));
+
+            int indexedCount = mergeAll(pool, startAt);
+            System.out.format("Summary: IndexBuildThread has imported %d keywords. Elapsed time: %s.%n",
+                    indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+        } catch (IOException e) {
+            System.out.println("IndexBuildThread throws an IOException.");
+            e.printStackTrace();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("IndexBuildThread throws an Exception.");
+            e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+
+            try {
+                for (Path file : segmentFiles) {
+                    Files.deleteIfExists(file);
+                }
+                if (segmentPath != null) {
+                    Files.deleteIfExists(segmentPath);
+                }
+            } catch (IOException e) {
+                System.out.println("IndexBuildThread failed to delete the segment files in " + segmentPath + ".");
+            }
+        }
+    }
+}
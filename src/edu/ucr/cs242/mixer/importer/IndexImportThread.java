@@ -6,7 +6,6 @@ import org.iq80.leveldb.DB;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
 
 public class IndexImportThread extends Thread {
@@ -30,8 +29,7 @@ public class IndexImportThread extends Thread {
 
         int indexedCount = 0;
 
-        try (BufferedReader indexReader = new BufferedReader(
-                new FileReader(Paths.get(jsonOutputPath, "index.json").toString()))) {
+        try (BufferedReader indexReader = Utility.openJsonInput(jsonOutputPath, "index.json")) {
 
             String indexLine;
             while ((indexLine = indexReader.readLine()) != null) {
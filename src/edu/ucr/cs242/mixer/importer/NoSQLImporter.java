@@ -20,19 +20,41 @@ public class NoSQLImporter {
     private final String jsonOutputPath;
     private final String hadoopIndexOutputPath;
     private final String hadoopPageRankOutputPath;
+    private final int numOfThreads;
+    private final long buildMemory;
+    private final String buildPath;
 
     /**
      * Construct an NoSQLImporter with given settings.
      * @param databasePath          The path to LevelDB database.
      * @param jsonOutputPath        The folder to the JSON output.
-     * @param hadoopIndexOutputPath The file name to the Hadoop's index output.
-     * @param hadoopPageRankOutputPath The file name to the Hadoop's PageRank output.
+     * @param hadoopIndexOutputPath The file name to the Hadoop's index output, or its folder.
+     * @param hadoopPageRankOutputPath The file name to the Hadoop's PageRank output, or its folder.
      */
     public NoSQLImporter(String databasePath, String jsonOutputPath, String hadoopIndexOutputPath, String hadoopPageRankOutputPath) {
+        this(databasePath, jsonOutputPath, hadoopIndexOutputPath, hadoopPageRankOutputPath, 1, 0, jsonOutputPath);
+    }
+
+    /**
+     * Construct an NoSQLImporter with given settings, which builds the posting lists in process if there is
+     * no Hadoop's index output.
+     * @param databasePath          The path to LevelDB database.
+     * @param jsonOutputPath        The folder to the JSON output.
+     * @param hadoopIndexOutputPath The file name to the Hadoop's index output, or its folder, null to build from data.json.
+     * @param hadoopPageRankOutputPath The file name to the Hadoop's PageRank output, or its folder.
+     * @param numOfThreads          The number of threads to build the posting lists.
+     * @param buildMemory           The memory for the postings in building, in bytes, beyond which they are spilled.
+     * @param buildPath             The folder to create the spill files of the build in, they are deleted afterwards.
+     */
+    public NoSQLImporter(String databasePath, String jsonOutputPath, String hadoopIndexOutputPath,
+                         String hadoopPageRankOutputPath, int numOfThreads, long buildMemory, String buildPath) {
         this.databasePath = databasePath;
         this.jsonOutputPath = jsonOutputPath;
         this.hadoopIndexOutputPath = hadoopIndexOutputPath;
         this.hadoopPageRankOutputPath = hadoopPageRankOutputPath;
+        this.numOfThreads = numOfThreads;
+        this.buildMemory = buildMemory;
+        this.buildPath = buildPath;
     }
 
     public void start() throws IOException {
@@ -43,19 +65,45 @@ public class NoSQLImporter {
             Thread indexThread = new IndexImportThread(db, jsonOutputPath);
             indexThread.start();
 
-            Thread dataThread = new DataImportThread(db, hadoopIndexOutputPath);
+            Thread dataThread = hadoopIndexOutputPath != null ?
+                    new DataImportThread(db, hadoopIndexOutputPath) :
+                    new IndexBuildThread(db, jsonOutputPath, buildPath, numOfThreads, buildMemory);
             dataThread.start();
 
-            DocumentLengthImportThread lengthThread = new DocumentLengthImportThread(db, jsonOutputPath);
+            DocumentLengthImportThread lengthThread = new DocumentLengthImportThread(db, databasePath, jsonOutputPath);
             lengthThread.start();
 
-            PageRankImportThread pageRankThread = new PageRankImportThread(db, hadoopPageRankOutputPath);
+            PageRankImportThread pageRankThread = new PageRankImportThread(db, databasePath, hadoopPageRankOutputPath);
             pageRankThread.start();
 
             Utility.waitThread(indexThread);
             Utility.waitThread(dataThread);
             Utility.waitThread(lengthThread);
             Utility.waitThread(pageRankThread);
+
+            // Score upper bounds need both the posting lists and the document lengths.
+            Thread termBoundThread = new TermBoundImportThread(db, databasePath);
+            termBoundThread.start();
+            Utility.waitThread(termBoundThread);
+        }
+    }
+
+    /**
+     * Rewrite the posting lists of an existing LevelDB store into the binary format, and add the term score bounds.
+     * @param databasePath The path to LevelDB database.
+     */
+    public static void migrate(String databasePath) throws IOException {
+        org.iq80.leveldb.Options options = new org.iq80.leveldb.Options();
+        options.createIfMissing(false);
+
+        try (DB db = JniDBFactory.factory.open(new File(databasePath), options)) {
+            Thread migrationThread = new PostingMigrationThread(db);
+            migrationThread.start();
+            Utility.waitThread(migrationThread);
+
+            Thread termBoundThread = new TermBoundImportThread(db, databasePath);
+            termBoundThread.start();
+            Utility.waitThread(termBoundThread);
         }
     }
 
@@ -65,6 +113,7 @@ public class NoSQLImporter {
 
     private static void printUsage() {
         System.out.println("usage: importer [options] <leveldb-path> <exporter-json-output-path> <hadoop-index-output-path> <hadoop-pagerank-output-path>");
+        System.out.println("       importer --build-index [options] <leveldb-path> <exporter-json-output-path> <hadoop-pagerank-output-path>");
         System.out.println("use -h for a list of possible options");
         System.exit(1);
     }
@@ -76,6 +125,9 @@ public class NoSQLImporter {
     }
 
     public static void main(String[] args) throws IOException {
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int BUILD_MEMORY_MB = 512;
+
         org.apache.commons.cli.Options options = new org.apache.commons.cli.Options();
         options.addOption(org.apache.commons.cli.Option.builder("l")
                 .longOpt("log-output")
@@ -84,6 +136,36 @@ public class NoSQLImporter {
                 .numberOfArgs(1)
                 .build());
 
+        options.addOption("m", "migrate", false,
+                "only convert the legacy JSON posting lists in <leveldb-path> into the binary format and compute the term score bounds");
+
+        options.addOption("b", "build-index", false,
+                "build the posting lists from the exporter's data.json in process, instead of importing the Hadoop's index output");
+
+        options.addOption(org.apache.commons.cli.Option.builder("t")
+                .longOpt("threads")
+                .argName("NUM OF THREADS")
+                .desc("the number of threads to build the posting lists, with --build-index " +
+                        "(default: " + NUMBER_OF_THREADS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(org.apache.commons.cli.Option.builder("s")
+                .longOpt("build-memory")
+                .argName("MEGABYTES")
+                .desc("the memory for the postings with --build-index, beyond which they are spilled into " +
+                        "segment files (default: " + BUILD_MEMORY_MB + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(org.apache.commons.cli.Option.builder("d")
+                .longOpt("build-dir")
+                .argName("PATH")
+                .desc("the folder to spill the segment files into with --build-index, " +
+                        "outside of the LevelDB path (default: <exporter-json-output-path>)")
+                .numberOfArgs(1)
+                .build());
+
         options.addOption("h", "help", false, "print a synopsis of standard options");
 
         try {
@@ -100,21 +182,49 @@ public class NoSQLImporter {
                 printUsage();
             }
 
+            if (cmd.hasOption("migrate")) {
+                Path databasePath = Paths.get(argList.get(0));
+                if (!Files.exists(databasePath) || !Files.isDirectory(databasePath)) {
+                    printMessage("invalid LevelDB path (not exist or not directory)");
+                    printUsage();
+                }
+
+                migrate(databasePath.toString());
+                return;
+            }
+
             if (argList.size() <= 1) {
                 printMessage("SQLExporter's JSON output path is not specified");
                 printUsage();
             }
 
-            if (argList.size() <= 2) {
+            // With --build-index, there is no Hadoop's index output path.
+            boolean buildIndex = cmd.hasOption("build-index");
+            int pageRankArg = buildIndex ? 2 : 3;
+
+            if (!buildIndex && argList.size() <= 2) {
                 printMessage("Hadoop's index output path is not specified");
                 printUsage();
             }
 
-            if (argList.size() <= 3) {
+            if (argList.size() <= pageRankArg) {
                 printMessage("Hadoop's PageRank output path is not specified");
                 printUsage();
             }
 
+            int numOfThreads;
+            int buildMemoryMB;
+            try {
+                numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                buildMemoryMB = Integer.parseInt(cmd.getOptionValue("build-memory", String.valueOf(BUILD_MEMORY_MB)));
+            } catch (NumberFormatException e) {
+                numOfThreads = buildMemoryMB = 0;
+            }
+            if (numOfThreads <= 0 || buildMemoryMB <= 0) {
+                printMessage("invalid number of threads or memory");
+                printUsage();
+            }
+
             String logOutput = cmd.getOptionValue("log-output");
             if (!Utility.openOutputLog(logOutput)) {
                 printMessage("invalid log file path");
@@ -133,20 +243,30 @@ public class NoSQLImporter {
                 printUsage();
             }
 
-            Path hadoopIndexOutputPath = Paths.get(argList.get(2));
-            if (!Files.exists(hadoopIndexOutputPath) || Files.isDirectory(hadoopIndexOutputPath)) {
-                printMessage("invalid Hadoop's index output path (not exist or is directory)");
+            Path buildPath = Paths.get(cmd.getOptionValue("build-dir", jsonOutputPath.toString()));
+            if (!Files.exists(buildPath) || !Files.isDirectory(buildPath)) {
+                printMessage("invalid build path (not exist or not directory)");
+                printUsage();
+            }
+
+            // Either a single file, or the job output folder of the part files.
+            Path hadoopIndexOutputPath = buildIndex ? null : Paths.get(argList.get(2));
+            if (hadoopIndexOutputPath != null && !Files.exists(hadoopIndexOutputPath)) {
+                printMessage("invalid Hadoop's index output path (not exist)");
                 printUsage();
             }
 
-            Path hadoopPageRankOutputPath = Paths.get(argList.get(3));
-            if (!Files.exists(hadoopPageRankOutputPath) || Files.isDirectory(hadoopPageRankOutputPath)) {
-                printMessage("invalid Hadoop's PageRank output path (not exist or is directory)");
+            // Either a single file, or the job output folder of the part files, e.g. of PageRank --schimmy --reducers.
+            Path hadoopPageRankOutputPath = Paths.get(argList.get(pageRankArg));
+            if (!Files.exists(hadoopPageRankOutputPath)) {
+                printMessage("invalid Hadoop's PageRank output path (not exist)");
                 printUsage();
             }
 
             new NoSQLImporter(databasePath.toString(), jsonOutputPath.toString(),
-                    hadoopIndexOutputPath.toString(), hadoopPageRankOutputPath.toString()).start();
+                    hadoopIndexOutputPath != null ? hadoopIndexOutputPath.toString() : null,
+                    hadoopPageRankOutputPath.toString(), numOfThreads, (long) buildMemoryMB << 20,
+                    buildPath.toString()).start();
         } catch (ParseException e) {
             // Lower the first letter, which as default is an upper letter.
             printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
@@ -1,23 +1,29 @@
 package edu.ucr.cs242.mixer.importer;
 
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 public class PageRankImportThread extends Thread {
     private final DB database;
+    private final String databasePath;
     private final String hadoopPageRankOutputPath;
 
     /**
      * Construct a page rank import thread, with given settings.
      * @param database                 The LevelDB object.
-     * @param hadoopPageRankOutputPath The file name to the Hadoop's PageRank output.
+     * @param databasePath             The path to LevelDB database, where the sidecar file is written.
+     * @param hadoopPageRankOutputPath The file name to the Hadoop's PageRank output, or its folder.
      */
-    public PageRankImportThread(DB database, String hadoopPageRankOutputPath) {
+    public PageRankImportThread(DB database, String databasePath, String hadoopPageRankOutputPath) {
         this.database = database;
+        this.databasePath = databasePath;
         this.hadoopPageRankOutputPath = hadoopPageRankOutputPath;
     }
 
@@ -28,7 +34,13 @@ public class PageRankImportThread extends Thread {
 
         int indexedCount = 0;
         double maxPageRank = 0;
-        try (BufferedReader dataReader = new BufferedReader(new FileReader(new File(hadoopPageRankOutputPath)))) {
+
+        // [docId -> PageRank], for the sidecar file.
+        float[] pageRank = new float[1024];
+        Arrays.fill(pageRank, DocumentStatistics.NO_PAGE_RANK);
+        int numOfDocs = 0;
+
+        try (BufferedReader dataReader = Utility.openJobOutput(hadoopPageRankOutputPath)) {
 
             String dataLine;
             while ((dataLine = dataReader.readLine()) != null) {
@@ -41,6 +53,14 @@ public class PageRankImportThread extends Thread {
                     // <docId, docRank>
                     database.put(JniDBFactory.bytes("__docPR_" + docId), JniDBFactory.bytes(String.valueOf(docRank)));
 
+                    if (docId >= pageRank.length) {
+                        int oldLength = pageRank.length;
+                        pageRank = Arrays.copyOf(pageRank, Math.max(oldLength * 2, docId + 1));
+                        Arrays.fill(pageRank, oldLength, pageRank.length, DocumentStatistics.NO_PAGE_RANK);
+                    }
+                    pageRank[docId] = (float) docRank;
+                    numOfDocs = Math.max(numOfDocs, docId + 1);
+
                     ++indexedCount;
                     if (indexedCount % 1000 == 0) {
                         System.out.format("PageRankImportThread has imported %d pages. Elapsed time: %s.%n",
@@ -53,6 +73,8 @@ public class PageRankImportThread extends Thread {
             }
 
             database.put(JniDBFactory.bytes("__docMaxPR"), JniDBFactory.bytes(String.valueOf(maxPageRank)));
+            DocumentStatistics.writePageRank(Paths.get(databasePath, DocumentStatistics.PAGE_RANK_FILE),
+                    numOfDocs, pageRank);
             System.out.format("Summary: PageRankImportThread has imported %d pages. Elapsed time: %s.%n",
                     indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
             System.out.println("Summary: The max PageRank is " + maxPageRank + ".");
@@ -0,0 +1,86 @@
+package edu.ucr.cs242.mixer.importer;
+
+import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.PostingList;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.WriteBatch;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Rewrite the posting lists of an existing LevelDB store from the legacy JSON format into the binary format.
+ */
+public class PostingMigrationThread extends Thread {
+    /**
+     * The number of records to be batch-written per LevelDB write.
+     */
+    public static final int BATCH_WRITE_COUNT = 1000;
+
+    private final DB database;
+
+    /**
+     * Construct a posting migration thread, with given settings.
+     * @param database The LevelDB object.
+     */
+    public PostingMigrationThread(DB database) {
+        this.database = database;
+    }
+
+    @Override
+    public void run() {
+        LocalDateTime startAt = LocalDateTime.now();
+        System.out.println("PostingMigrationThread started at " + startAt.toLocalTime() + ".");
+
+        int migratedCount = 0;
+        int skippedCount = 0;
+
+        // The iterator works on an implicit snapshot, so it is safe to write while iterating.
+        try (DBIterator iterator = database.iterator()) {
+            WriteBatch batch = database.createWriteBatch();
+            int batchCount = 0;
+
+            for (iterator.seekToFirst(); iterator.hasNext(); ) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                String key = JniDBFactory.asString(entry.getKey());
+
+                // Keys with `__` prefix are statistics, not posting lists.
+                if (key.startsWith("__") || PostingList.isBinaryFormat(entry.getValue())) {
+                    ++skippedCount;
+                    continue;
+                }
+
+                try {
+                    batch.put(entry.getKey(), PostingList.decode(entry.getValue()).encode());
+                    ++batchCount;
+                    ++migratedCount;
+                } catch (Exception e) {
+                    System.out.println("PostingMigrationThread throws an Exception on keyword `" + key + "`.");
+                    e.printStackTrace();
+                }
+
+                if (batchCount == BATCH_WRITE_COUNT) {
+                    database.write(batch);
+                    batch.close();
+                    batch = database.createWriteBatch();
+                    batchCount = 0;
+
+                    System.out.format("PostingMigrationThread has migrated %d keywords. Elapsed time: %s.%n",
+                            migratedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+                }
+            }
+
+            database.write(batch);
+            batch.close();
+
+            System.out.format("Summary: PostingMigrationThread has migrated %d keywords (%d skipped). Elapsed time: %s.%n",
+                    migratedCount, skippedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+        } catch (IOException e) {
+            System.out.println("PostingMigrationThread throws an IOException.");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.ucr.cs242.mixer.importer;
+
+import edu.ucr.cs242.mixer.mapreduce.PostingBlockWritable;
+import org.apache.hadoop.io.Text;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A sorted run of the index build: the posting block of each term, in term order, in memory or spilled to a file.
+ *
+ * A segment file is the number of terms, then each term (as a vint length and UTF-8 bytes) followed by its
+ * posting block.
+ */
+class PostingSegment {
+    /**
+     * Iterate the terms of a segment, in term order.
+     */
+    interface Cursor extends Closeable {
+        /**
+         * Move to the next term.
+         * @return Whether there is a next term.
+         */
+        boolean next() throws IOException;
+
+        String getTerm();
+
+        PostingBlockWritable getBlock();
+    }
+
+    private static List<Map.Entry<String, PostingBlockWritable>> sortedEntries(Map<String, PostingBlockWritable> postings) {
+        List<Map.Entry<String, PostingBlockWritable>> entries = new ArrayList<>(postings.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        return entries;
+    }
+
+    /**
+     * Write the postings into a segment file, in term order.
+     */
+    static void write(Path file, Map<String, PostingBlockWritable> postings) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), 1 << 16))) {
+            outputStream.writeInt(postings.size());
+            for (Map.Entry<String, PostingBlockWritable> entry : sortedEntries(postings)) {
+                Text.writeString(outputStream, entry.getKey());
+                entry.getValue().write(outputStream);
+            }
+        }
+    }
+
+    /**
+     * Open a cursor on a segment file.
+     */
+    static Cursor open(Path file) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+
+        return new Cursor() {
+            private int remaining = inputStream.readInt();
+            private String term;
+            private PostingBlockWritable block;
+
+            @Override
+            public boolean next() throws IOException {
+                if (remaining == 0) {
+                    return false;
+                }
+
+                term = Text.readString(inputStream);
+                block = new PostingBlockWritable();
+                block.readFields(inputStream);
+                --remaining;
+                return true;
+            }
+
+            @Override
+            public String getTerm() {
+                return term;
+            }
+
+            @Override
+            public PostingBlockWritable getBlock() {
+                return block;
+            }
+
+            @Override
+            public void close() throws IOException {
+                inputStream.close();
+            }
+        };
+    }
+
+    /**
+     * Open a cursor on the postings in memory, in term order. The postings are moved into the cursor, which lets go of
+     * each term once past it, so the memory is freed as the merge goes.
+     */
+    static Cursor open(Map<String, PostingBlockWritable> postings) {
+        List<Map.Entry<String, PostingBlockWritable>> entries = sortedEntries(postings);
+        postings.clear();
+
+        return new Cursor() {
+            private int index = 0;
+            private Map.Entry<String, PostingBlockWritable> entry;
+
+            @Override
+            public boolean next() {
+                entry = index < entries.size() ? entries.set(index++, null) : null;
+                return entry != null;
+            }
+
+            @Override
+            public String getTerm() {
+                return entry.getKey();
+            }
+
+            @Override
+            public PostingBlockWritable getBlock() {
+                return entry.getValue();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package edu.ucr.cs242.mixer.importer;
+
+import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.BM25;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
+import edu.ucr.cs242.mixer.index.PostingList;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.WriteBatch;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Precompute, for every term and field, the max BM25 part 2 over the documents having the term,
+ * stored as `__termBound_<term>` -> `<title>,<content>,<categories>` (-Infinity if the term is not in a field).
+ * The searcher turns them into score upper bounds to skip documents which cannot enter the top results.
+ *
+ * Must run after all the other import threads, as it needs the posting lists and the document lengths.
+ */
+public class TermBoundImportThread extends Thread {
+    /**
+     * The number of records to be batch-written per LevelDB write.
+     */
+    public static final int BATCH_WRITE_COUNT = 1000;
+
+    private final DB database;
+    private final String databasePath;
+
+    /**
+     * Construct a term bound import thread, with given settings.
+     * @param database     The LevelDB object.
+     * @param databasePath The path to LevelDB database, where the document length sidecar file is.
+     */
+    public TermBoundImportThread(DB database, String databasePath) {
+        this.database = database;
+        this.databasePath = databasePath;
+    }
+
+    private static double[] maxTermFreqWeight(PostingList postings, DocumentStatistics statistics, double[] avgDocLength) {
+        double[] bound = new double[PostingList.NUM_OF_FIELDS];
+        Arrays.fill(bound, Double.NEGATIVE_INFINITY);
+
+        for (int i = 0; i < postings.size(); i++) {
+            int docId = postings.getDocId(i);
+            for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                int termFreq = postings.getFrequency(i, fieldId);
+                if (termFreq > 0) {
+                    double weight = BM25.termFreqWeight(termFreq,
+                            statistics.getDocLength(docId, fieldId), avgDocLength[fieldId]);
+                    bound[fieldId] = Math.max(bound[fieldId], weight);
+                }
+            }
+        }
+
+        return bound;
+    }
+
+    @Override
+    public void run() {
+        LocalDateTime startAt = LocalDateTime.now();
+        System.out.println("TermBoundImportThread started at " + startAt.toLocalTime() + ".");
+
+        int indexedCount = 0;
+
+        try {
+            DocumentStatistics statistics = DocumentStatistics.load(Paths.get(databasePath), database, false);
+            double[] avgDocLength = new double[PostingList.NUM_OF_FIELDS];
+            for (int i = 0; i < avgDocLength.length; i++) {
+                avgDocLength[i] = Double.parseDouble(Utility.levelDBGet(database, "__avgDocLength_" + i));
+            }
+
+            // The iterator works on an implicit snapshot, so it is safe to write while iterating.
+            try (DBIterator iterator = database.iterator()) {
+                WriteBatch batch = database.createWriteBatch();
+                int batchCount = 0;
+
+                for (iterator.seekToFirst(); iterator.hasNext(); ) {
+                    Map.Entry<byte[], byte[]> entry = iterator.next();
+                    String key = JniDBFactory.asString(entry.getKey());
+
+                    // Keys with `__` prefix are statistics, not posting lists.
+                    if (key.startsWith("__")) {
+                        continue;
+                    }
+
+                    try {
+                        double[] bound = maxTermFreqWeight(PostingList.decode(entry.getValue()), statistics, avgDocLength);
+                        batch.put(JniDBFactory.bytes("__termBound_" + key), JniDBFactory.bytes(
+                                Arrays.stream(bound).mapToObj(String::valueOf).collect(Collectors.joining(","))));
+                        ++batchCount;
+                        ++indexedCount;
+                    } catch (Exception e) {
+                        System.out.println("TermBoundImportThread throws an Exception on keyword `" + key + "`.");
+                        e.printStackTrace();
+                    }
+
+                    if (batchCount == BATCH_WRITE_COUNT) {
+                        database.write(batch);
+                        batch.close();
+                        batch = database.createWriteBatch();
+                        batchCount = 0;
+
+                        System.out.format("TermBoundImportThread has imported %d keywords. Elapsed time: %s.%n",
+                                indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+                    }
+                }
+
+                database.write(batch);
+                batch.close();
+            }
+
+            System.out.format("Summary: TermBoundImportThread has imported %d keywords. Elapsed time: %s.%n",
+                    indexedCount, Utility.elapsedTime(startAt, LocalDateTime.now()));
+        } catch (IOException e) {
+            System.out.println("TermBoundImportThread throws an IOException.");
+            e.printStackTrace();
+        }
+    }
+}
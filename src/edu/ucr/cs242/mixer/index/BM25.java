@@ -0,0 +1,39 @@
+package edu.ucr.cs242.mixer.index;
+
+/**
+ * The three parts of the BM25 score used by Mixer, BM25 = part1 + part2 + part3.
+ * Shared by the importer, which precomputes score upper bounds, and the searcher.
+ */
+public class BM25 {
+    public static final double k1 = 1.2;
+    public static final double k2 = 100.0;
+    public static final double b = 0.75;
+
+    /**
+     * Part 1, only depends on the term.
+     * @param numberOfDocs The number of documents in the collection.
+     * @param docFreq      The number of documents having the term in the field.
+     */
+    public static double inverseDocFreq(double numberOfDocs, double docFreq) {
+        return Math.log((numberOfDocs - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    /**
+     * Part 2, depends on the document.
+     * @param termFreq     The occurrences of the term in the field of the document.
+     * @param docLength    The length of the field of the document.
+     * @param avgDocLength The average length of the field.
+     */
+    public static double termFreqWeight(double termFreq, double docLength, double avgDocLength) {
+        double K = k1 * ((1 - b) + b * docLength / avgDocLength);
+        return Math.log((k1 + 1) * termFreq / (K + termFreq));
+    }
+
+    /**
+     * Part 3, only depends on the query.
+     * @param queryFreq The occurrences of the term in the query.
+     */
+    public static double queryFreqWeight(double queryFreq) {
+        return Math.log((k2 + 1) * queryFreq / (k2 + queryFreq));
+    }
+}
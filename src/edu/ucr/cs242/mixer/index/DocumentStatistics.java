@@ -0,0 +1,232 @@
+package edu.ucr.cs242.mixer.index;
+
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Per-document statistics used in Mixer scoring (field lengths and PageRank), indexed by docId.
+ *
+ * The importer writes them into sidecar files next to the LevelDB files, in big-endian:
+ * <pre>
+ *   doc-length.bin: int magic, int version, int numOfFields, int numOfDocs, int[numOfFields][numOfDocs] lengths
+ *   pagerank.bin:   int magic, int version, int numOfDocs, float[numOfDocs] PageRank (negative if absent)
+ * </pre>
+ * Stores imported before the sidecar files existed are loaded from the `__docLength_` and `__docPR_` keys instead.
+ */
+public class DocumentStatistics {
+    public static final String DOC_LENGTH_FILE = "doc-length.bin";
+    public static final String PAGE_RANK_FILE = "pagerank.bin";
+
+    private static final int DOC_LENGTH_MAGIC = 0x4D58444C; // MXDL
+    private static final int PAGE_RANK_MAGIC = 0x4D585052;  // MXPR
+    private static final int VERSION = 1;
+
+    /**
+     * The PageRank value of documents without a PageRank.
+     */
+    public static final float NO_PAGE_RANK = -1.0f;
+
+    // <FieldId, [docId -> length]>
+    private final IntBuffer[] docLength;
+    // [docId -> PageRank]
+    private final FloatBuffer pageRank;
+
+    public int getDocLength(int docId, int fieldId) {
+        IntBuffer lengths = docLength[fieldId];
+        return docId < lengths.limit() ? lengths.get(docId) : 0;
+    }
+
+    /**
+     * @return The PageRank of the document, or {@link #NO_PAGE_RANK} if it has none.
+     */
+    public float getPageRank(int docId) {
+        return docId < pageRank.limit() ? pageRank.get(docId) : NO_PAGE_RANK;
+    }
+
+    private DocumentStatistics(IntBuffer[] docLength, FloatBuffer pageRank) {
+        this.docLength = docLength;
+        this.pageRank = pageRank;
+    }
+
+    /**
+     * Write the document length sidecar file.
+     * @param file      The file to write.
+     * @param numOfDocs The number of documents (max docId + 1).
+     * @param docLength The document lengths, indexed by [fieldId][docId].
+     */
+    public static void writeDocLength(Path file, int numOfDocs, int[][] docLength) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(DOC_LENGTH_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(docLength.length);
+            output.writeInt(numOfDocs);
+
+            for (int[] lengths : docLength) {
+                for (int docId = 0; docId < numOfDocs; docId++) {
+                    output.writeInt(docId < lengths.length ? lengths[docId] : 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the PageRank sidecar file.
+     * @param file      The file to write.
+     * @param numOfDocs The number of documents (max docId + 1).
+     * @param pageRank  The PageRank values indexed by docId, {@link #NO_PAGE_RANK} if absent.
+     */
+    public static void writePageRank(Path file, int numOfDocs, float[] pageRank) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(PAGE_RANK_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(numOfDocs);
+
+            for (int docId = 0; docId < numOfDocs; docId++) {
+                output.writeFloat(docId < pageRank.length ? pageRank[docId] : NO_PAGE_RANK);
+            }
+        }
+    }
+
+    private static ByteBuffer readFile(Path file, boolean memoryMapped) throws IOException {
+        if (memoryMapped) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed.
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static IntBuffer[] readDocLength(Path file, boolean memoryMapped) throws IOException {
+        ByteBuffer buffer = readFile(file, memoryMapped);
+        if (buffer.getInt(0) != DOC_LENGTH_MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid document length file " + file + ".");
+        }
+
+        int numOfFields = buffer.getInt(8);
+        int numOfDocs = buffer.getInt(12);
+        IntBuffer[] docLength = new IntBuffer[numOfFields];
+        for (int fieldId = 0; fieldId < numOfFields; fieldId++) {
+            docLength[fieldId] = slice(buffer, 16 + fieldId * numOfDocs * 4, numOfDocs * 4).asIntBuffer();
+        }
+        return docLength;
+    }
+
+    private static FloatBuffer readPageRank(Path file, boolean memoryMapped) throws IOException {
+        ByteBuffer buffer = readFile(file, memoryMapped);
+        if (buffer.getInt(0) != PAGE_RANK_MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid PageRank file " + file + ".");
+        }
+
+        int numOfDocs = buffer.getInt(8);
+        return slice(buffer, 12, numOfDocs * 4).asFloatBuffer();
+    }
+
+    private static int[] grow(int[] array, int index, int fill) {
+        if (index >= array.length) {
+            int oldLength = array.length;
+            array = Arrays.copyOf(array, Math.max(oldLength * 2, index + 1));
+            Arrays.fill(array, oldLength, array.length, fill);
+        }
+        return array;
+    }
+
+    // Read all keys in a form of `<prefix><docId>...`, calling the consumer with the key suffix and the value.
+    private static void scanLevelDB(DB levelDB, String prefix, KeyValueConsumer consumer) throws IOException {
+        try (DBIterator iterator = levelDB.iterator()) {
+            for (iterator.seek(JniDBFactory.bytes(prefix)); iterator.hasNext(); ) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                String key = JniDBFactory.asString(entry.getKey());
+                if (!key.startsWith(prefix)) {
+                    break;
+                }
+
+                consumer.accept(key.substring(prefix.length()), JniDBFactory.asString(entry.getValue()));
+            }
+        }
+    }
+
+    private interface KeyValueConsumer {
+        void accept(String keySuffix, String value);
+    }
+
+    private static IntBuffer[] loadDocLength(DB levelDB) throws IOException {
+        int[][] docLength = new int[PostingList.NUM_OF_FIELDS][1024];
+        int[] numOfDocs = { 0 };
+
+        // `__docLength_<docId>_<fieldId>`
+        scanLevelDB(levelDB, "__docLength_", (suffix, value) -> {
+            int split = suffix.lastIndexOf('_');
+            int docId = Integer.parseInt(suffix.substring(0, split));
+            int fieldId = Integer.parseInt(suffix.substring(split + 1));
+
+            docLength[fieldId] = grow(docLength[fieldId], docId, 0);
+            docLength[fieldId][docId] = Integer.parseInt(value);
+            numOfDocs[0] = Math.max(numOfDocs[0], docId + 1);
+        });
+
+        return Arrays.stream(docLength)
+                .map(lengths -> IntBuffer.wrap(Arrays.copyOf(lengths, numOfDocs[0])))
+                .toArray(IntBuffer[]::new);
+    }
+
+    private static FloatBuffer loadPageRank(DB levelDB) throws IOException {
+        float[][] pageRank = { new float[1024] };
+        Arrays.fill(pageRank[0], NO_PAGE_RANK);
+        int[] numOfDocs = { 0 };
+
+        // `__docPR_<docId>`
+        scanLevelDB(levelDB, "__docPR_", (suffix, value) -> {
+            int docId = Integer.parseInt(suffix);
+            if (docId >= pageRank[0].length) {
+                int oldLength = pageRank[0].length;
+                pageRank[0] = Arrays.copyOf(pageRank[0], Math.max(oldLength * 2, docId + 1));
+                Arrays.fill(pageRank[0], oldLength, pageRank[0].length, NO_PAGE_RANK);
+            }
+
+            pageRank[0][docId] = Float.parseFloat(value);
+            numOfDocs[0] = Math.max(numOfDocs[0], docId + 1);
+        });
+
+        return FloatBuffer.wrap(Arrays.copyOf(pageRank[0], numOfDocs[0]));
+    }
+
+    /**
+     * Load the document statistics, preferring the sidecar files over LevelDB.
+     * @param levelDBPath  The path to the LevelDB directory, where the sidecar files are.
+     * @param levelDB      The LevelDB object, in case the sidecar files are missing.
+     * @param memoryMapped Whether memory-map the sidecar files instead of reading them into heap.
+     * @return The document statistics.
+     */
+    public static DocumentStatistics load(Path levelDBPath, DB levelDB, boolean memoryMapped) throws IOException {
+        Path docLengthFile = levelDBPath.resolve(DOC_LENGTH_FILE);
+        Path pageRankFile = levelDBPath.resolve(PAGE_RANK_FILE);
+
+        IntBuffer[] docLength = Files.exists(docLengthFile) ?
+                readDocLength(docLengthFile, memoryMapped) : loadDocLength(levelDB);
+        FloatBuffer pageRank = Files.exists(pageRankFile) ?
+                readPageRank(pageRankFile, memoryMapped) : loadPageRank(levelDB);
+
+        return new DocumentStatistics(docLength, pageRank);
+    }
+}
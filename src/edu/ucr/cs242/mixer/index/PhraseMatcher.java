@@ -0,0 +1,87 @@
+package edu.ucr.cs242.mixer.index;
+
+/**
+ * Match phrases over the sorted position arrays of {@link PostingList}, without boxing or allocation.
+ *
+ * A phrase of n terms matches if each term occurs after the previous one, and at most `slop` other words are
+ * in between in total, i.e. the last term is at most n - 1 + slop positions after the first one.
+ * A slop of 0 is an exact phrase match.
+ */
+public class PhraseMatcher {
+    /**
+     * Find the first value, within a sorted range, not less than the target.
+     * Gallop from the start of the range, so skipping over a few values is cheap even in a long range.
+     * @param values The sorted values.
+     * @param from   The start of the range (inclusive).
+     * @param to     The end of the range (exclusive).
+     * @param target The target value.
+     * @return The index of the value, or `to` if there is none.
+     */
+    public static int gallop(int[] values, int from, int to, int target) {
+        // Gallop, then binary search within the last step.
+        int step = 1;
+        int low = from, high = from;
+        while (high < to && values[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+
+        high = Math.min(high, to);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether the phrase occurs. The same position array may be given for several terms (e.g. a repeated term).
+     * @param positions The position array of each term of the phrase, in phrase order.
+     * @param start     The start of the position range of each term (inclusive). Used as cursors, so overwritten.
+     * @param end       The end of the position range of each term (exclusive).
+     * @param length    The number of terms in the phrase.
+     * @param slop      The max number of other words in between the terms.
+     */
+    public static boolean matches(int[][] positions, int[] start, int[] end, int length, int slop) {
+        if (length == 0) {
+            return false;
+        }
+
+        int first = start[0];
+        while (first < end[0]) {
+            int head = positions[0][first];
+            int prev = head;
+
+            // Greedily take the earliest occurrence of each term after the previous one.
+            // As the head only moves forward, so do the cursors of the other terms.
+            int i = 1;
+            for (; i < length; i++) {
+                int cursor = gallop(positions[i], start[i], end[i], prev + 1);
+                start[i] = cursor;
+                if (cursor == end[i]) {
+                    // Neither this head nor any later one can be followed by the term.
+                    return false;
+                }
+
+                prev = positions[i][cursor];
+                if (prev - head - i > slop) {
+                    break;
+                }
+            }
+
+            if (i == length) {
+                return true;
+            }
+
+            // Term i is never earlier than `prev` from now on, so skip the heads too far before it.
+            first = gallop(positions[0], first + 1, end[0], prev - i - slop);
+        }
+
+        return false;
+    }
+}
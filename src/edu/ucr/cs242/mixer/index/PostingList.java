@@ -0,0 +1,319 @@
+package edu.ucr.cs242.mixer.index;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The postings of one term, sorted by document id and kept in primitive arrays.
+ *
+ * Binary layout (all integers are variable-byte encoded, see {@link VarByteWriter}):
+ * <pre>
+ *   byte    format version
+ *   vint    number of postings
+ *   vint[3] document frequency of each field
+ *   blocks of BLOCK_SIZE postings (the last one may be shorter), each being
+ *     vint  number of postings in the block
+ *     vint  the last document id in the block
+ *     vint  the byte length of the postings that follow
+ *     postings: vint docId gap, vint[3] frequency, then the position gaps of each field
+ * </pre>
+ * A binary posting list is decoded lazily, a block at a time when one of its postings is first accessed, so the
+ * blocks skipped over by {@link #advance(int, int)} with the last document id of each block are never decoded.
+ * The legacy JSON value written by earlier importers is still accepted by {@link #decode(byte[])}.
+ */
+public class PostingList {
+    /**
+     * The version byte leading every binary posting list.
+     * Legacy JSON values always start with '[' instead.
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Only 3 field, 0 - title, 1 - content, 2 - categories.
+     */
+    public static final int NUM_OF_FIELDS = 3;
+
+    /**
+     * The number of postings per block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private final int size;
+    private final int[] docIds;
+    // [posting * NUM_OF_FIELDS + fieldId]
+    private final int[] frequency;
+    // [posting * NUM_OF_FIELDS + fieldId], the positions of a posting are contiguous in field order
+    private final int[] positionOffset;
+    private int[] position;
+    private int positionCount;
+    private final int[] docFrequency;
+
+    // The encoded value, and the last docId and the offset of the postings of each block, null if all decoded.
+    private final byte[] value;
+    private final int[] blockLastDocId;
+    private final int[] blockOffset;
+    private final boolean[] blockDecoded;
+    private int numOfDecodedBlocks;
+
+    public int size() {
+        return size;
+    }
+
+    public int getDocId(int index) {
+        decodeBlock(index / BLOCK_SIZE);
+        return docIds[index];
+    }
+
+    /**
+     * Skip to the first posting, at or after the given index, whose docId is not less than the target.
+     * The blocks whose last docId is less than the target are skipped without being decoded.
+     * @param index  The index to start from.
+     * @param target The target docId.
+     * @return The index of the posting, or {@link #size()} if there is none.
+     */
+    public int advance(int index, int target) {
+        if (index >= size) {
+            return size;
+        }
+
+        int block = index / BLOCK_SIZE;
+        if (blockLastDocId != null && blockLastDocId[block] < target) {
+            block = PhraseMatcher.gallop(blockLastDocId, block + 1, blockLastDocId.length, target);
+            if (block == blockLastDocId.length) {
+                return size;
+            }
+            index = block * BLOCK_SIZE;
+        }
+
+        decodeBlock(block);
+        // The target is within the block, unless the list is decoded at once.
+        int to = blockLastDocId != null ? Math.min(size, (block + 1) * BLOCK_SIZE) : size;
+        return PhraseMatcher.gallop(docIds, index, to, target);
+    }
+
+    public int getFrequency(int index, int fieldId) {
+        decodeBlock(index / BLOCK_SIZE);
+        return frequency[index * NUM_OF_FIELDS + fieldId];
+    }
+
+    /**
+     * @return The shared position array, use together with {@link #getPositionStart} and {@link #getPositionEnd}.
+     * It grows as blocks are decoded, so get it after the positions of the posting are accessed.
+     */
+    public int[] getPositions() {
+        return position;
+    }
+
+    public int getPositionStart(int index, int fieldId) {
+        decodeBlock(index / BLOCK_SIZE);
+        return positionOffset[index * NUM_OF_FIELDS + fieldId];
+    }
+
+    public int getPositionEnd(int index, int fieldId) {
+        return getPositionStart(index, fieldId) + frequency[index * NUM_OF_FIELDS + fieldId];
+    }
+
+    /**
+     * @return The number of documents having this term in the given field.
+     */
+    public int getDocFrequency(int fieldId) {
+        return docFrequency[fieldId];
+    }
+
+    /**
+     * @return The number of blocks decoded so far, all blocks of a legacy posting list count as one.
+     */
+    public int getNumOfDecodedBlocks() {
+        return numOfDecodedBlocks;
+    }
+
+    // A posting list decoded at once.
+    private PostingList(int size, int[] docIds, int[] frequency, int[] positionOffset, int[] position,
+                        int positionCount, int[] docFrequency) {
+        this.size = size;
+        this.docIds = docIds;
+        this.frequency = frequency;
+        this.positionOffset = positionOffset;
+        this.position = position;
+        this.positionCount = positionCount;
+        this.docFrequency = docFrequency;
+        this.value = null;
+        this.blockLastDocId = null;
+        this.blockOffset = null;
+        this.blockDecoded = null;
+        this.numOfDecodedBlocks = 1;
+    }
+
+    // A binary posting list to be decoded block by block.
+    private PostingList(int size, int[] docFrequency, byte[] value, int[] blockLastDocId, int[] blockOffset) {
+        this.size = size;
+        this.docIds = new int[size];
+        this.frequency = new int[size * NUM_OF_FIELDS];
+        this.positionOffset = new int[size * NUM_OF_FIELDS];
+        // Most terms occur once or twice per document, grow on demand.
+        this.position = new int[Math.max(Math.min(size, BLOCK_SIZE) * 2, 16)];
+        this.positionCount = 0;
+        this.docFrequency = docFrequency;
+        this.value = value;
+        this.blockLastDocId = blockLastDocId;
+        this.blockOffset = blockOffset;
+        this.blockDecoded = new boolean[blockLastDocId.length];
+        this.numOfDecodedBlocks = 0;
+    }
+
+    public static boolean isBinaryFormat(byte[] value) {
+        return value != null && value.length > 0 && value[0] == FORMAT_VERSION;
+    }
+
+    /**
+     * Decode a posting list stored in LevelDB. Only the block headers of a binary value are read here.
+     * @param value The raw value, either in binary format or in legacy JSON format.
+     * @return The decoded posting list.
+     */
+    public static PostingList decode(byte[] value) {
+        if (!isBinaryFormat(value)) {
+            return decodeLegacy(new String(value, StandardCharsets.UTF_8));
+        }
+
+        VarByteReader reader = new VarByteReader(value, 1);
+        int size = reader.readVInt();
+        int[] docFrequency = new int[NUM_OF_FIELDS];
+        for (int i = 0; i < NUM_OF_FIELDS; i++) {
+            docFrequency[i] = reader.readVInt();
+        }
+
+        int numOfBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockLastDocId = new int[numOfBlocks];
+        int[] blockOffset = new int[numOfBlocks];
+        for (int block = 0; block < numOfBlocks; block++) {
+            int blockSize = reader.readVInt();
+            if (blockSize != Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE)) {
+                throw new IllegalArgumentException("Unexpected block size " + blockSize + " of block " + block + ".");
+            }
+
+            blockLastDocId[block] = reader.readVInt();
+            int byteLength = reader.readVInt();
+            blockOffset[block] = reader.getOffset();
+            reader.setOffset(reader.getOffset() + byteLength);
+        }
+
+        return new PostingList(size, docFrequency, value, blockLastDocId, blockOffset);
+    }
+
+    private void decodeBlock(int block) {
+        if (blockDecoded == null || blockDecoded[block]) {
+            return;
+        }
+
+        VarByteReader reader = new VarByteReader(value, blockOffset[block]);
+        int from = block * BLOCK_SIZE;
+        int to = Math.min(size, from + BLOCK_SIZE);
+        // The docId gaps of a block start from the last docId of the previous block.
+        int docId = block > 0 ? blockLastDocId[block - 1] : -1;
+
+        for (int index = from; index < to; index++) {
+            docId += reader.readVInt() + 1;
+            docIds[index] = docId;
+
+            int totalFreq = 0;
+            for (int fieldId = 0; fieldId < NUM_OF_FIELDS; fieldId++) {
+                int freq = reader.readVInt();
+                frequency[index * NUM_OF_FIELDS + fieldId] = freq;
+                totalFreq += freq;
+            }
+
+            if (positionCount + totalFreq > position.length) {
+                position = Arrays.copyOf(position, Math.max(position.length * 2, positionCount + totalFreq));
+            }
+
+            for (int fieldId = 0; fieldId < NUM_OF_FIELDS; fieldId++) {
+                positionOffset[index * NUM_OF_FIELDS + fieldId] = positionCount;
+
+                int pos = 0;
+                for (int j = frequency[index * NUM_OF_FIELDS + fieldId]; j > 0; j--) {
+                    pos += reader.readVInt();
+                    position[positionCount++] = pos;
+                }
+            }
+        }
+
+        blockDecoded[block] = true;
+        ++numOfDecodedBlocks;
+    }
+
+    /**
+     * Decode the legacy JSON value, in a form of `[{"docId": {"frequency": [...], "position": [[...], ...]}}, ...]`.
+     * @param value The JSON string.
+     * @return The decoded posting list.
+     */
+    public static PostingList decodeLegacy(String value) {
+        JSONArray array = new JSONArray(value);
+        int size = array.length();
+
+        // Legacy postings are not ordered by document id.
+        Integer[] order = new Integer[size];
+        int[] unorderedDocIds = new int[size];
+        JSONObject[] indexes = new JSONObject[size];
+        for (int i = 0; i < size; i++) {
+            JSONObject json = array.getJSONObject(i);
+            String docId = json.keys().next();
+            unorderedDocIds[i] = Integer.parseInt(docId);
+            indexes[i] = json.getJSONObject(docId);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> unorderedDocIds[i]));
+
+        int[] docIds = new int[size];
+        int[] frequency = new int[size * NUM_OF_FIELDS];
+        int[] positionOffset = new int[size * NUM_OF_FIELDS];
+        int[] position = new int[16];
+        int[] docFrequency = new int[NUM_OF_FIELDS];
+        int positionCount = 0;
+
+        for (int index = 0; index < size; index++) {
+            docIds[index] = unorderedDocIds[order[index]];
+            JSONArray freqArray = indexes[order[index]].getJSONArray("frequency");
+            JSONArray posArray = indexes[order[index]].getJSONArray("position");
+
+            for (int fieldId = 0; fieldId < NUM_OF_FIELDS; fieldId++) {
+                int freq = fieldId < freqArray.length() ? freqArray.getInt(fieldId) : 0;
+                frequency[index * NUM_OF_FIELDS + fieldId] = freq;
+                positionOffset[index * NUM_OF_FIELDS + fieldId] = positionCount;
+                if (freq > 0) {
+                    ++docFrequency[fieldId];
+                }
+
+                if (positionCount + freq > position.length) {
+                    position = Arrays.copyOf(position, Math.max(position.length * 2, positionCount + freq));
+                }
+
+                JSONArray fieldPos = posArray.getJSONArray(fieldId);
+                for (int j = 0; j < freq; j++) {
+                    position[positionCount++] = fieldPos.getInt(j);
+                }
+            }
+        }
+        return new PostingList(size, docIds, frequency, positionOffset, position, positionCount, docFrequency);
+    }
+
+    /**
+     * Encode this posting list into the binary format.
+     * @return The encoded bytes.
+     */
+    public byte[] encode() {
+        PostingListWriter writer = new PostingListWriter();
+        int[] freq = new int[NUM_OF_FIELDS];
+
+        for (int i = 0; i < size; i++) {
+            int docId = getDocId(i);
+            System.arraycopy(frequency, i * NUM_OF_FIELDS, freq, 0, NUM_OF_FIELDS);
+            writer.add(docId, freq, position, positionOffset[i * NUM_OF_FIELDS]);
+        }
+
+        return writer.toByteArray();
+    }
+}
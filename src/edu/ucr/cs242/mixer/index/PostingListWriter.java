@@ -0,0 +1,98 @@
+package edu.ucr.cs242.mixer.index;
+
+import java.util.Arrays;
+
+/**
+ * Encode the postings of one term into the binary format read by {@link PostingList}.
+ * Postings must be added in ascending document id order.
+ */
+public class PostingListWriter {
+    private final VarByteWriter body = new VarByteWriter(4096);
+    private final VarByteWriter block = new VarByteWriter(1024);
+    private final int[] docFrequency = new int[PostingList.NUM_OF_FIELDS];
+
+    private int size = 0;
+    private int blockSize = 0;
+    private int lastDocId = -1;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a posting to the list.
+     * @param docId     The document id, must be greater than the last added one.
+     * @param frequency The term frequency for each field.
+     * @param position  The positions of all fields, concatenated in field order.
+     */
+    public void add(int docId, int[] frequency, int[] position) {
+        add(docId, frequency, position, 0);
+    }
+
+    /**
+     * Append a posting whose positions start at the given offset of a shared array.
+     * @param docId          The document id, must be greater than the last added one.
+     * @param frequency      The term frequency for each field.
+     * @param position       The array holding the positions of all fields, concatenated in field order.
+     * @param positionOffset The index of the first position of this posting.
+     */
+    public void add(int docId, int[] frequency, int[] position, int positionOffset) {
+        if (docId <= lastDocId) {
+            throw new IllegalArgumentException("Postings must be added in ascending document id order (" +
+                    docId + " after " + lastDocId + ").");
+        }
+        if (frequency.length != PostingList.NUM_OF_FIELDS) {
+            throw new IllegalArgumentException("Expecting " + PostingList.NUM_OF_FIELDS + " fields, got " +
+                    frequency.length + ".");
+        }
+
+        block.writeVInt(docId - lastDocId - 1);
+        for (int freq : frequency) {
+            block.writeVInt(freq);
+        }
+
+        int p = positionOffset;
+        for (int fieldId = 0; fieldId < frequency.length; fieldId++) {
+            if (frequency[fieldId] > 0) {
+                ++docFrequency[fieldId];
+            }
+
+            // Positions in a field are ascending, so only store the gaps.
+            int prevPos = 0;
+            for (int i = 0; i < frequency[fieldId]; i++, p++) {
+                block.writeVInt(position[p] - prevPos);
+                prevPos = position[p];
+            }
+        }
+
+        lastDocId = docId;
+        ++size;
+
+        if (++blockSize == PostingList.BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() {
+        if (blockSize > 0) {
+            body.writeVInt(blockSize);
+            body.writeVInt(lastDocId);
+            body.writeVInt(block.length());
+            body.writeBytes(block);
+
+            block.reset();
+            blockSize = 0;
+        }
+    }
+
+    public byte[] toByteArray() {
+        flushBlock();
+
+        VarByteWriter writer = new VarByteWriter(body.length() + 16);
+        writer.writeByte(PostingList.FORMAT_VERSION);
+        writer.writeVInt(size);
+        Arrays.stream(docFrequency).forEach(writer::writeVInt);
+        writer.writeBytes(body);
+        return writer.toByteArray();
+    }
+}
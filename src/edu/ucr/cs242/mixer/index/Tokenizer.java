@@ -0,0 +1,183 @@
+package edu.ucr.cs242.mixer.index;
+
+import edu.ucr.cs242.Utility;
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.englishStemmer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split text into the indexed terms, the same way at index and at query time.
+ *
+ * The text is split by whitespace into tokens, each of which takes a position. A token is stripped of leading and
+ * trailing punctuation and lowercased, and only kept if it is alphanumeric and not a stop word; the kept ones are
+ * stemmed into terms. All of these are done in one pass over a reused char buffer, so only the terms are allocated.
+ *
+ * A tokenizer is not thread-safe, as the buffer and the stemmer are reused.
+ */
+public class Tokenizer {
+    /**
+     * Receive the terms of a text.
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        void accept(String term, int position) throws IOException, InterruptedException;
+    }
+
+    // Open addressing table of the stop words, with a power of 2 size.
+    private static final char[][] STOP_WORDS;
+
+    static {
+        List<String> stopWords = Utility.getStopWords();
+        int size = Integer.highestOneBit(stopWords.size() * 4);
+        STOP_WORDS = new char[size][];
+        for (String word : stopWords) {
+            char[] chars = word.toCharArray();
+            int slot = hash(chars, chars.length) & (size - 1);
+            while (STOP_WORDS[slot] != null) {
+                slot = (slot + 1) & (size - 1);
+            }
+            STOP_WORDS[slot] = chars;
+        }
+    }
+
+    private final SnowballStemmer stemmer = new englishStemmer();
+    private char[] buffer = new char[64];
+
+    private static int hash(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean isStopWord(char[] chars, int length) {
+        for (int slot = hash(chars, length) & (STOP_WORDS.length - 1); STOP_WORDS[slot] != null;
+             slot = (slot + 1) & (STOP_WORDS.length - 1)) {
+            char[] word = STOP_WORDS[slot];
+            if (word.length == length) {
+                int i = 0;
+                while (i < length && word[i] == chars[i]) {
+                    ++i;
+                }
+                if (i == length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // The token delimiters, the same as java.util.StringTokenizer.
+    private static boolean isDelimiter(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    // ASCII punctuation, as \p{Punct}.
+    private static boolean isPunct(char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+
+    // ASCII letters and digits, as \p{Alnum}.
+    private static boolean isAlnum(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Count the tokens of the text, i.e. the positions taken.
+     */
+    public static int countTokens(CharSequence text) {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean delimiter = isDelimiter(text.charAt(i));
+            if (!delimiter && !inToken) {
+                ++count;
+            }
+            inToken = !delimiter;
+        }
+        return count;
+    }
+
+    /**
+     * Split the text into terms.
+     * @param text     The text.
+     * @param consumer The consumer of each term, with the position of its token.
+     * @return The number of tokens.
+     */
+    public int tokenize(CharSequence text, TermConsumer consumer) throws IOException, InterruptedException {
+        int position = 0;
+        int length = text.length();
+
+        int i = 0;
+        while (i < length) {
+            while (i < length && isDelimiter(text.charAt(i))) {
+                ++i;
+            }
+            if (i == length) {
+                break;
+            }
+
+            int start = i;
+            while (i < length && !isDelimiter(text.charAt(i))) {
+                ++i;
+            }
+            int end = i;
+
+            // Remove the beginning and ending punctuation, then the remaining control characters.
+            while (start < end && isPunct(text.charAt(start))) {
+                ++start;
+            }
+            while (end > start && isPunct(text.charAt(end - 1))) {
+                --end;
+            }
+            while (start < end && text.charAt(start) <= ' ') {
+                ++start;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                --end;
+            }
+
+            if (end - start > buffer.length) {
+                buffer = new char[Math.max(buffer.length * 2, end - start)];
+            }
+
+            // We only index alphanumeric and non-empty words, in lower case.
+            int termLength = 0;
+            boolean alnum = start < end;
+            for (int j = start; alnum && j < end; j++) {
+                char c = Character.toLowerCase(text.charAt(j));
+                alnum = isAlnum(c);
+                buffer[termLength++] = c;
+            }
+
+            if (alnum && !isStopWord(buffer, termLength)) {
+                // Stemming through Snowball
+                stemmer.setCurrent(buffer, termLength);
+                stemmer.stem();
+                consumer.accept(stemmer.getCurrent(), position);
+            }
+
+            ++position;
+        }
+
+        return position;
+    }
+
+    /**
+     * Split the text into terms, in order.
+     */
+    public List<String> tokenize(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        try {
+            tokenize(text, (term, position) -> terms.add(term));
+        } catch (IOException | InterruptedException e) {
+            // Not thrown by the consumer above.
+            throw new IllegalStateException(e);
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,46 @@
+package edu.ucr.cs242.mixer.index;
+
+/**
+ * A cursor over a byte array written by {@link VarByteWriter}.
+ */
+public class VarByteReader {
+    private final byte[] buffer;
+    private int offset;
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public boolean hasRemaining() {
+        return offset < buffer.length;
+    }
+
+    public VarByteReader(byte[] buffer) {
+        this(buffer, 0);
+    }
+
+    public VarByteReader(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public int readByte() {
+        return buffer[offset++] & 0xFF;
+    }
+
+    public int readVInt() {
+        int b = buffer[offset++];
+        int value = b & 0x7F;
+
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = buffer[offset++];
+            value |= (b & 0x7F) << shift;
+        }
+
+        return value;
+    }
+}
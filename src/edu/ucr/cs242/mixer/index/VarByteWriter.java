@@ -0,0 +1,63 @@
+package edu.ucr.cs242.mixer.index;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer writing non-negative integers in variable-byte encoding
+ * (7 bits per byte, the high bit set on every byte but the last).
+ */
+public class VarByteWriter {
+    private byte[] buffer;
+    private int length;
+
+    public int length() {
+        return length;
+    }
+
+    public VarByteWriter() {
+        this(64);
+    }
+
+    public VarByteWriter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+        length = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    public void writeVInt(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("VarByteWriter only encodes non-negative integers: " + value);
+        }
+
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    public void writeBytes(VarByteWriter other) {
+        ensureCapacity(other.length);
+        System.arraycopy(other.buffer, 0, buffer, length, other.length);
+        length += other.length;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+}
@@ -0,0 +1,79 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import edu.ucr.cs242.mixer.index.Tokenizer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Map a document (a line of data.json) into the postings of its terms, in the title, content and categories fields.
+ * Shared by the Hadoop index job and the local index builder of the importer.
+ *
+ * A document mapper is not thread-safe, as its tokenizer is reused.
+ */
+public class DocumentMapper {
+    /**
+     * Receive the postings of a document.
+     */
+    @FunctionalInterface
+    public interface PostingConsumer {
+        void accept(String term, IndexWritable posting) throws IOException, InterruptedException;
+    }
+
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    private void mapInvertedIndex(Map<String, List<Integer>> frequency,
+                                  Map<String, List<List<Integer>>> position,
+                                  int fieldCount, int fieldId, String value) throws IOException, InterruptedException {
+        tokenizer.tokenize(value, (token, tokenPosition) -> {
+            if (!frequency.containsKey(token)) {
+                frequency.put(token, new ArrayList<>(Collections.nCopies(fieldCount, 0)));
+                position.put(token, Stream.generate(ArrayList<Integer>::new).limit(fieldCount).collect(Collectors.toList()));
+            }
+
+            frequency.get(token).set(fieldId, frequency.get(token).get(fieldId) + 1);
+            position.get(token).get(fieldId).add(tokenPosition);
+        });
+    }
+
+    public void map(String value, PostingConsumer consumer) throws IOException, InterruptedException {
+        try {
+            JSONObject json = new JSONObject(value);
+
+            int id = json.getInt("id");
+            // Lowercased by the tokenizer
+            String title = json.getString("title");
+            String content = json.getString("content");
+            String categories = json.getJSONArray("categories").toList().stream()
+                    .map(Objects::toString)
+                    .collect(Collectors.joining(" "));
+
+            // <key, <fieldId:freq>>
+            Map<String, List<Integer>> frequency = new HashMap<>();
+            // <key, <fieldId:[pos]>>
+            Map<String, List<List<Integer>>> position = new HashMap<>();
+
+            mapInvertedIndex(frequency, position, 3, 0, title);
+            mapInvertedIndex(frequency, position, 3, 1, content);
+            mapInvertedIndex(frequency, position, 3, 2, categories);
+
+            for (Map.Entry<String, List<Integer>> entry : frequency.entrySet()) {
+                consumer.accept(entry.getKey(),
+                        new IndexWritable(id, entry.getValue().stream().mapToInt(i -> i).toArray(),
+                                position.get(entry.getKey()).stream().flatMap(List::stream).mapToInt(i -> i).toArray())
+                );
+            }
+        } catch (JSONException e) {
+            // The last line of input file (the empty line), will trigger this exception.
+            // But maybe possible some other problem occurred
+            if (!value.isEmpty()) {
+                System.out.println("JSONException, with value of `" + value + "`");
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskCounter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare the serialized size and the (de)serialization time of the postings of a sample of data.json, in the
+ * compact variable-length format of {@link IndexWritable} and in the former fixed-width format (a 4-byte int for
+ * the docId, each array length and each element). Optionally run the index job on the sample, and report its
+ * map output and shuffle bytes and its wall time.
+ */
+public class IndexBenchmark {
+    /**
+     * The number of rounds to time the (de)serialization, after a round of warm up.
+     */
+    public static final int NUM_OF_ROUNDS = 5;
+
+    private final int numOfDocs;
+    private final String jsonDataInputPath;
+    private final String benchmarkOutputPath;
+
+    /**
+     * Construct an index benchmark, with given settings.
+     * @param numOfDocs           The number of documents sampled from the beginning of the input.
+     * @param jsonDataInputPath   The path to the SQLExporter's data.json.
+     * @param benchmarkOutputPath The folder to the sample and the job output, null if not running the job.
+     */
+    public IndexBenchmark(int numOfDocs, String jsonDataInputPath, String benchmarkOutputPath) {
+        this.numOfDocs = numOfDocs;
+        this.jsonDataInputPath = jsonDataInputPath;
+        this.benchmarkOutputPath = benchmarkOutputPath;
+    }
+
+    private static void writeFixed(DataOutput dataOutput, IndexWritable posting) throws IOException {
+        dataOutput.writeInt(posting.getDocId());
+        dataOutput.writeInt(posting.getFrequency().length);
+        for (int freq : posting.getFrequency()) {
+            dataOutput.writeInt(freq);
+        }
+        dataOutput.writeInt(posting.getPosition().length);
+        for (int pos : posting.getPosition()) {
+            dataOutput.writeInt(pos);
+        }
+    }
+
+    private static IndexWritable readFixed(DataInput dataInput) throws IOException {
+        int docId = dataInput.readInt();
+        int[] frequency = new int[dataInput.readInt()];
+        for (int i = 0; i < frequency.length; i++) {
+            frequency[i] = dataInput.readInt();
+        }
+        int[] position = new int[dataInput.readInt()];
+        for (int i = 0; i < position.length; i++) {
+            position[i] = dataInput.readInt();
+        }
+        return new IndexWritable(docId, frequency, position);
+    }
+
+    @FunctionalInterface
+    private interface PostingWriter {
+        void write(DataOutput dataOutput, IndexWritable posting) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PostingReader {
+        IndexWritable read(DataInput dataInput) throws IOException;
+    }
+
+    // Time the serialization and deserialization of all postings, in milliseconds per round.
+    private static void benchmark(String format, List<IndexWritable> postings,
+                                  PostingWriter writer, PostingReader reader) throws IOException {
+        DataOutputBuffer output = new DataOutputBuffer();
+        DataInputBuffer input = new DataInputBuffer();
+        long writeTime = 0;
+        long readTime = 0;
+
+        for (int round = 0; round <= NUM_OF_ROUNDS; round++) {
+            output.reset();
+            long startAt = System.nanoTime();
+            for (IndexWritable posting : postings) {
+                writer.write(output, posting);
+            }
+            long writtenAt = System.nanoTime();
+
+            input.reset(output.getData(), output.getLength());
+            for (int i = 0; i < postings.size(); i++) {
+                reader.read(input);
+            }
+            long readAt = System.nanoTime();
+
+            // The first round is to warm up the JIT compiler.
+            if (round > 0) {
+                writeTime += writtenAt - startAt;
+                readTime += readAt - writtenAt;
+            }
+        }
+
+        System.out.format("%-16s%16d%16.2f%16.1f%16.1f%n", format, output.getLength(),
+                (double) output.getLength() / postings.size(),
+                writeTime / 1e6 / NUM_OF_ROUNDS, readTime / 1e6 / NUM_OF_ROUNDS);
+    }
+
+    private static void printCounter(Counters counters, TaskCounter counter) {
+        System.out.format("%-32s%16d%n", counter.name(), counters.findCounter(counter).getValue());
+    }
+
+    public void start() throws Exception {
+        Configuration conf = new Configuration();
+        List<String> documents = new ArrayList<>();
+        IndexMapReduce.readSample(conf, jsonDataInputPath, numOfDocs, documents::add);
+
+        List<IndexWritable> postings = new ArrayList<>();
+        DocumentMapper documentMapper = new DocumentMapper();
+        for (String document : documents) {
+            documentMapper.map(document, (term, posting) -> postings.add(posting));
+        }
+
+        System.out.println(postings.size() + " postings are mapped from " + documents.size() + " documents.");
+        System.out.println();
+        System.out.format("%-16s%16s%16s%16s%16s%n", "Format", "Bytes", "Bytes/Posting", "Write (ms)", "Read (ms)");
+        benchmark("Fixed-width", postings, IndexBenchmark::writeFixed, IndexBenchmark::readFixed);
+        benchmark("Variable-length", postings, (dataOutput, posting) -> posting.write(dataOutput), dataInput -> {
+            IndexWritable posting = new IndexWritable();
+            posting.readFields(dataInput);
+            return posting;
+        });
+
+        if (benchmarkOutputPath != null) {
+            Path samplePath = new Path(benchmarkOutputPath, "sample.json");
+            FileSystem fs = samplePath.getFileSystem(conf);
+            try (FSDataOutputStream outputStream = fs.create(samplePath, true);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+                for (String document : documents) {
+                    writer.write(document);
+                    writer.newLine();
+                }
+            }
+
+            Path indexPath = new Path(benchmarkOutputPath, "index");
+            fs.delete(indexPath, true);
+
+            LocalDateTime startAt = LocalDateTime.now();
+            IndexMapReduce indexer = new IndexMapReduce(samplePath.toString(), indexPath.toString(),
+                    1, false, 64L << 20, false, false);
+            indexer.start();
+            String elapsedTime = Utility.elapsedTime(startAt, LocalDateTime.now());
+
+            System.out.println();
+            printCounter(indexer.getCounters(), TaskCounter.MAP_OUTPUT_RECORDS);
+            printCounter(indexer.getCounters(), TaskCounter.MAP_OUTPUT_BYTES);
+            printCounter(indexer.getCounters(), TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES);
+            printCounter(indexer.getCounters(), TaskCounter.REDUCE_SHUFFLE_BYTES);
+            printCounter(indexer.getCounters(), TaskCounter.SPILLED_RECORDS);
+            System.out.format("%-32s%16s%n", "Elapsed Time", elapsedTime);
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("ixbench: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: ixbench [options] <json-data-input-path> [benchmark-output-path]");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("ixbench [options] <json-data-input-path> [benchmark-output-path]", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int NUMBER_OF_DOCUMENTS = IndexMapReduce.SAMPLE_DOCUMENTS;
+
+        Options options = new Options();
+        options.addOption(Option.builder("n")
+                .longOpt("documents")
+                .argName("NUM OF DOCUMENTS")
+                .desc("the number of documents sampled from the beginning of the input " +
+                        "(default: " + NUMBER_OF_DOCUMENTS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("m", "mapreduce", false,
+                "also run the index job on the sample, in the benchmark output path");
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.isEmpty() || argList.size() > 2) {
+                printUsage();
+            }
+
+            if (cmd.hasOption("mapreduce") && argList.size() < 2) {
+                printMessage("benchmark output path is not specified");
+                printUsage();
+            }
+
+            try {
+                int numOfDocs = Integer.parseInt(cmd.getOptionValue("documents", String.valueOf(NUMBER_OF_DOCUMENTS)));
+                if (numOfDocs <= 0) {
+                    throw new NumberFormatException("The number of documents must be positive.");
+                }
+
+                new IndexBenchmark(numOfDocs, argList.get(0),
+                        cmd.hasOption("mapreduce") ? argList.get(1) : null).start();
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
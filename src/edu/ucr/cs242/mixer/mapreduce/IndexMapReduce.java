@@ -1,137 +1,452 @@
-package edu.ucr.cs242.mixer.mapreduce;
-
-import edu.ucr.cs242.Utility;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.englishStemmer;
-
-import java.io.IOException;
-import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
-
-class IndexMapper extends Mapper<Object, Text, Text, IndexWritable> {
-    private final SnowballStemmer stemmer = new englishStemmer();
-
-    private void mapInvertedIndex(Map<String, List<Integer>> frequency,
-                                  Map<String, List<List<Integer>>> position,
-                                  int fieldCount, int fieldId, String value) {
-        StringTokenizer tokenizer = new StringTokenizer(value);
-
-        int tokenCount = 0;
-        while (tokenizer.hasMoreTokens()) {
-            String token = tokenizer.nextToken()
-                    // Remove the beginning and ending punctuation
-                    .replaceAll("^\\p{Punct}*|\\p{Punct}*$", "")
-                    // Ensure lower case
-                    .trim().toLowerCase();
-
-            // We only index alphanumeric and non-empty words
-            if (Pattern.matches("^[\\p{Alnum}]+$", token)) {
-                if (!Utility.isStopWord(token)) {
-                    // Stemming through Snowball
-                    stemmer.setCurrent(token);
-                    stemmer.stem();
-                    token = stemmer.getCurrent();
-
-                    if (!frequency.containsKey(token)) {
-                        frequency.put(token, new ArrayList<>(Collections.nCopies(fieldCount, 0)));
-                        position.put(token, Stream.generate(ArrayList<Integer>::new).limit(fieldCount).collect(Collectors.toList()));
-                    }
-
-                    frequency.get(token).set(fieldId, frequency.get(token).get(fieldId) + 1);
-                    position.get(token).get(fieldId).add(tokenCount);
-                }
-            }
-
-            ++tokenCount;
-        }
-    }
-
-    @Override
-    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-        try {
-            JSONObject json = new JSONObject(value.toString());
-
-            int id = json.getInt("id");
-            // We index in lowercase
-            String title = json.getString("title").toLowerCase();
-            String content = json.getString("content").toLowerCase();
-            String categories = json.getJSONArray("categories").toList().stream()
-                    .map(Objects::toString).map(String::toLowerCase)
-                    .collect(Collectors.joining(" "));
-
-            // <key, <fieldId:freq>>
-            Map<String, List<Integer>> frequency = new HashMap<>();
-            // <key, <fieldId:[pos]>>
-            Map<String, List<List<Integer>>> position = new HashMap<>();
-
-            mapInvertedIndex(frequency, position, 3, 0, title);
-            mapInvertedIndex(frequency, position, 3, 1, content);
-            mapInvertedIndex(frequency, position, 3, 2, categories);
-
-            for (Map.Entry<String, List<Integer>> entry : frequency.entrySet()) {
-                context.write(
-                        new Text(entry.getKey()),
-                        new IndexWritable(id, entry.getValue().stream().mapToInt(i -> i).toArray(),
-                                position.get(entry.getKey()).stream().flatMap(List::stream).mapToInt(i -> i).toArray())
-                );
-            }
-        } catch (JSONException e) {
-            // The last line of input file (the empty line), will trigger this exception.
-            // But maybe possible some other problem occurred
-            if (!value.toString().isEmpty()) {
-                System.out.println("JSONException, with value of `" + value.toString() + "`");
-                e.printStackTrace();
-            }
-        }
-    }
-}
-
-class IndexReducer extends Reducer<Text, IndexWritable, Text, Text> {
-    @Override
-    protected void reduce(Text key, Iterable<IndexWritable> values, Context context) throws IOException, InterruptedException {
-        String value = StreamSupport.stream(values.spliterator(), false)
-                .map(IndexWritable::toString).collect(Collectors.joining(";"));
-
-        context.write(key, new Text(value));
-    }
-}
-
-public class IndexMapReduce {
-    public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.out.println("usage: mapreduce <json-data-input-path> <index-output-path>");
-        } else {
-            Job job = Job.getInstance(new Configuration(), "MapReduceIndexer");
-            job.setJarByClass(IndexMapReduce.class);
-
-            job.setMapperClass(IndexMapper.class);
-            job.setReducerClass(IndexReducer.class);
-
-            job.setMapOutputKeyClass(Text.class);
-            job.setMapOutputValueClass(IndexWritable.class);
-
-            job.setOutputKeyClass(Text.class);
-            job.setOutputValueClass(Text.class);
-
-            FileInputFormat.addInputPath(job, new Path(args[0]));
-            FileOutputFormat.setOutputPath(job, new Path(args[1]));
-
-            if (!job.waitForCompletion(true)) {
-                System.exit(1);
-            }
-        }
-    }
-}
+package edu.ucr.cs242.mixer.mapreduce;
+
+import edu.ucr.cs242.mixer.index.PostingListWriter;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+class IndexMapper extends Mapper<Object, Text, TermDocIdWritable, IndexWritable> {
+    private final DocumentMapper documentMapper = new DocumentMapper();
+    private final TermDocIdWritable termDocId = new TermDocIdWritable();
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+        documentMapper.map(value.toString(), (term, posting) -> {
+            termDocId.set(term, posting.getDocId());
+            context.write(termDocId, posting);
+        });
+    }
+}
+
+// Buffer the postings of many documents per term, and emit them as a block per term when the buffer is full.
+// A block is keyed by its first docId, so the blocks of a term reach the reducer about in docId order.
+class CombiningIndexMapper extends Mapper<Object, Text, TermDocIdWritable, PostingBlockWritable> {
+    // The estimated memory of a buffered term, besides its term and postings
+    private static final int TERM_OVERHEAD = 128;
+
+    private final DocumentMapper documentMapper = new DocumentMapper();
+    private final Map<String, PostingBlockWritable> buffer = new HashMap<>();
+    private long bufferLimit;
+    private long bufferSize = 0;
+
+    @Override
+    protected void setup(Context context) {
+        bufferLimit = context.getConfiguration().getLong(IndexMapReduce.COMBINE_BUFFER_SIZE, 64L << 20);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+        TermDocIdWritable termDocId = new TermDocIdWritable();
+        for (Map.Entry<String, PostingBlockWritable> entry : buffer.entrySet()) {
+            termDocId.set(entry.getKey(), entry.getValue().getFirstDocId());
+            context.write(termDocId, entry.getValue());
+        }
+
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+        documentMapper.map(value.toString(), (term, posting) -> {
+            PostingBlockWritable block = buffer.get(term);
+            if (block == null) {
+                block = new PostingBlockWritable();
+                buffer.put(term, block);
+                bufferSize += TERM_OVERHEAD + term.length() * 2;
+            }
+
+            int length = block.getLength();
+            block.add(posting.getDocId(), posting.getFrequency(), posting.getPosition());
+            bufferSize += block.getLength() - length;
+        });
+
+        if (bufferSize >= bufferLimit) {
+            flush(context);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        flush(context);
+    }
+}
+
+// The document frequency and the collection frequency of a term in each field.
+class TermStatistics {
+    private int[] docFrequency = new int[0];
+    private int[] collectionFrequency = new int[0];
+
+    void add(IndexWritable posting) {
+        int[] frequency = posting.getFrequency();
+        if (frequency.length > docFrequency.length) {
+            docFrequency = Arrays.copyOf(docFrequency, frequency.length);
+            collectionFrequency = Arrays.copyOf(collectionFrequency, frequency.length);
+        }
+
+        for (int fieldId = 0; fieldId < frequency.length; fieldId++) {
+            if (frequency[fieldId] > 0) {
+                ++docFrequency[fieldId];
+                collectionFrequency[fieldId] += frequency[fieldId];
+            }
+        }
+    }
+
+    // In a form of `df,df,df\tcf,cf,cf`
+    @Override
+    public String toString() {
+        return Arrays.stream(docFrequency).mapToObj(String::valueOf).collect(Collectors.joining(",")) + "\t" +
+                Arrays.stream(collectionFrequency).mapToObj(String::valueOf).collect(Collectors.joining(","));
+    }
+}
+
+// Write a term as `term\tdocId:f,f,f|p,p,...;...\tdf,df,df\tcf,cf,cf`, with the postings in docId order.
+class IndexReducer extends Reducer<TermDocIdWritable, IndexWritable, Text, Text> {
+    static Text format(Iterable<IndexWritable> postings) {
+        StringBuilder value = new StringBuilder();
+        TermStatistics statistics = new TermStatistics();
+        for (IndexWritable posting : postings) {
+            if (value.length() > 0) {
+                value.append(';');
+            }
+            value.append(posting.toString());
+            statistics.add(posting);
+        }
+
+        return new Text(value.append('\t').append(statistics.toString()).toString());
+    }
+
+    @Override
+    protected void reduce(TermDocIdWritable key, Iterable<IndexWritable> values, Context context) throws IOException, InterruptedException {
+        // The postings are sorted by docId in the shuffle, and the key is the term of the group.
+        Text value = format(values);
+        context.write(key.getTerm(), value);
+    }
+}
+
+// The same output as IndexReducer, from the posting blocks of CombiningIndexMapper.
+class PostingBlockReducer extends Reducer<TermDocIdWritable, PostingBlockWritable, Text, Text> {
+    // The blocks of different mappers may overlap in docId, so sort their postings. They are runs of ascending
+    // docIds, and mostly already in order, which the merge sort of List.sort takes in about linear time.
+    static List<IndexWritable> sortedPostings(Iterable<PostingBlockWritable> values) throws IOException, InterruptedException {
+        List<IndexWritable> postings = new ArrayList<>();
+        for (PostingBlockWritable block : values) {
+            block.forEach(postings::add);
+        }
+
+        postings.sort(Comparator.comparingInt(IndexWritable::getDocId));
+        return postings;
+    }
+
+    @Override
+    protected void reduce(TermDocIdWritable key, Iterable<PostingBlockWritable> values, Context context) throws IOException, InterruptedException {
+        Text value = IndexReducer.format(sortedPostings(values));
+        context.write(key.getTerm(), value);
+    }
+}
+
+// Encode the postings of a term into the binary posting list stored by the importer, instead of a text line.
+// The document frequencies are in the header of the list; the collection frequencies are not stored.
+class BinaryIndexReducer extends Reducer<TermDocIdWritable, IndexWritable, Text, BytesWritable> {
+    static BytesWritable encode(Iterable<IndexWritable> postings) {
+        // The postings must be in docId order.
+        PostingListWriter writer = new PostingListWriter();
+        for (IndexWritable posting : postings) {
+            writer.add(posting.getDocId(), posting.getFrequency(), posting.getPosition());
+        }
+        return new BytesWritable(writer.toByteArray());
+    }
+
+    @Override
+    protected void reduce(TermDocIdWritable key, Iterable<IndexWritable> values, Context context) throws IOException, InterruptedException {
+        BytesWritable value = encode(values);
+        context.write(key.getTerm(), value);
+    }
+}
+
+// The same output as BinaryIndexReducer, from the posting blocks of CombiningIndexMapper.
+class BinaryPostingBlockReducer extends Reducer<TermDocIdWritable, PostingBlockWritable, Text, BytesWritable> {
+    @Override
+    protected void reduce(TermDocIdWritable key, Iterable<PostingBlockWritable> values, Context context) throws IOException, InterruptedException {
+        BytesWritable value = BinaryIndexReducer.encode(PostingBlockReducer.sortedPostings(values));
+        context.write(key.getTerm(), value);
+    }
+}
+
+public class IndexMapReduce {
+    /**
+     * The memory for buffering postings per mapper, in bytes, with in-mapper combining.
+     */
+    public static final String COMBINE_BUFFER_SIZE = "edu.ucr.cs242.mixer.mapreduce.IndexMapReduce.combineBufferSize";
+
+    /**
+     * The number of documents sampled for balancing the reducers.
+     */
+    public static final int SAMPLE_DOCUMENTS = 10000;
+
+    /**
+     * The number of the heaviest terms in the sample assigned to reducers, the rest are hashed.
+     */
+    public static final int ASSIGNED_TERMS = 10000;
+
+    private final String jsonDataInputPath;
+    private final String indexOutputPath;
+    private final int numOfReducers;
+    private final boolean combine;
+    private final long combineBufferSize;
+    private final boolean balance;
+    private final boolean binary;
+    private Counters counters;
+
+    /**
+     * Construct a MapReduce indexer, with given settings.
+     * @param jsonDataInputPath The HDFS path to the SQLExporter's data.json.
+     * @param indexOutputPath   The HDFS path to the output.
+     * @param numOfReducers     The number of reducers.
+     * @param combine           Whether combine the postings of many documents in the mappers.
+     * @param combineBufferSize The memory for buffering postings per mapper, in bytes, when combining.
+     * @param balance           Whether balance the reducers by term frequency, instead of term hash.
+     * @param binary            Whether write SequenceFiles of binary posting lists, instead of text.
+     */
+    public IndexMapReduce(String jsonDataInputPath, String indexOutputPath, int numOfReducers,
+                          boolean combine, long combineBufferSize, boolean balance, boolean binary) {
+        this.jsonDataInputPath = jsonDataInputPath;
+        this.indexOutputPath = indexOutputPath;
+        this.numOfReducers = numOfReducers;
+        this.combine = combine;
+        this.combineBufferSize = combineBufferSize;
+        this.balance = balance;
+        this.binary = binary;
+    }
+
+    /**
+     * Receive the lines of a sample.
+     */
+    @FunctionalInterface
+    interface LineConsumer {
+        void accept(String line) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Read the first lines (documents) of the input files, in the order they are listed.
+     * @param conf       The Hadoop configuration.
+     * @param inputPath  The path to the input, a file or a folder of files, optionally compressed.
+     * @param numOfLines The max number of lines to read.
+     * @param consumer   The consumer of each line.
+     * @return The number of lines read.
+     */
+    static int readSample(Configuration conf, String inputPath, int numOfLines, LineConsumer consumer)
+            throws IOException, InterruptedException {
+        Path path = new Path(inputPath);
+        FileSystem fs = path.getFileSystem(conf);
+        FileStatus[] files = fs.listStatus(path);
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+
+        int count = 0;
+        for (FileStatus file : files) {
+            if (count >= numOfLines || !file.isFile() || file.getPath().getName().startsWith("_")) {
+                continue;
+            }
+
+            InputStream inputStream = fs.open(file.getPath());
+            CompressionCodec codec = codecs.getCodec(file.getPath());
+            if (codec != null) {
+                inputStream = codec.createInputStream(inputStream);
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                String line;
+                while (count < numOfLines && (line = reader.readLine()) != null) {
+                    consumer.accept(line);
+                    ++count;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    // Weight the terms by their postings and positions, in the first documents of the input.
+    private Map<String, Long> sampleTermWeight(Configuration conf) throws IOException, InterruptedException {
+        Map<String, Long> weight = new HashMap<>();
+        DocumentMapper documentMapper = new DocumentMapper();
+
+        int numOfDocs = readSample(conf, jsonDataInputPath, SAMPLE_DOCUMENTS, line ->
+                documentMapper.map(line, (term, posting) ->
+                        weight.merge(term, 1L + posting.getPosition().length, Long::sum)));
+
+        System.out.println(weight.size() + " terms are sampled from " + numOfDocs + " documents.");
+        return weight;
+    }
+
+    /**
+     * The counters of the finished job, e.g. the map output and shuffle bytes.
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
+    public void start() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setLong(COMBINE_BUFFER_SIZE, combineBufferSize);
+
+        Path outputPath = new Path(indexOutputPath);
+        Path assignmentPath = new Path(outputPath.getParent(), outputPath.getName() + "-partition");
+        if (balance) {
+            TermPartitioner.writeAssignment(assignmentPath.getFileSystem(conf), assignmentPath,
+                    sampleTermWeight(conf), ASSIGNED_TERMS, numOfReducers);
+            conf.set(TermPartitioner.ASSIGNMENT_PATH, assignmentPath.toString());
+        }
+
+        Job job = Job.getInstance(conf, "MapReduceIndexer");
+        job.setJarByClass(IndexMapReduce.class);
+
+        if (combine) {
+            job.setMapperClass(CombiningIndexMapper.class);
+            job.setReducerClass(binary ? BinaryPostingBlockReducer.class : PostingBlockReducer.class);
+            job.setMapOutputValueClass(PostingBlockWritable.class);
+        } else {
+            job.setMapperClass(IndexMapper.class);
+            job.setReducerClass(binary ? BinaryIndexReducer.class : IndexReducer.class);
+            job.setMapOutputValueClass(IndexWritable.class);
+        }
+        // Secondary sort: the postings of a term are sorted by docId, and reduced together.
+        job.setMapOutputKeyClass(TermDocIdWritable.class);
+        job.setSortComparatorClass(TermDocIdWritable.Comparator.class);
+        job.setGroupingComparatorClass(TermDocIdWritable.GroupingComparator.class);
+
+        // Partitioned by term only, so TermPartitioner is always needed, while it only balances with an assignment.
+        job.setNumReduceTasks(numOfReducers);
+        job.setPartitionerClass(TermPartitioner.class);
+
+        job.setOutputKeyClass(Text.class);
+        if (binary) {
+            job.setOutputValueClass(BytesWritable.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        } else {
+            job.setOutputValueClass(Text.class);
+        }
+
+        FileInputFormat.addInputPath(job, new Path(jsonDataInputPath));
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        try {
+            if (!job.waitForCompletion(true)) {
+                throw new Exception("Job MapReduceIndexer failed.");
+            }
+            counters = job.getCounters();
+        } finally {
+            if (balance) {
+                assignmentPath.getFileSystem(conf).delete(assignmentPath, false);
+            }
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("mapreduce: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: mapreduce [options] <json-data-input-path> <index-output-path>");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("mapreduce [options] <json-data-input-path> <index-output-path>", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int NUMBER_OF_REDUCERS = 1;
+        final int COMBINE_BUFFER_MB = 64;
+
+        Options options = new Options();
+        options.addOption(Option.builder("r")
+                .longOpt("reducers")
+                .argName("NUM OF REDUCERS")
+                .desc("the number of reducers, and so of output files (default: " + NUMBER_OF_REDUCERS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("c", "combine", false,
+                "buffer the postings of many documents in the mappers, and emit them as compact blocks per term");
+
+        options.addOption(Option.builder("m")
+                .longOpt("combine-memory")
+                .argName("MEGABYTES")
+                .desc("the memory for buffering postings per mapper, with --combine (default: " + COMBINE_BUFFER_MB + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("b", "balance", false,
+                "balance the reducers by term frequency, sampled from the first " + SAMPLE_DOCUMENTS +
+                        " documents, instead of term hash");
+
+        options.addOption("s", "sequence-file", false,
+                "write SequenceFiles of term to binary posting list, which the importer stores without parsing");
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.size() != 2) {
+                printUsage();
+            }
+
+            try {
+                int numOfReducers = Integer.parseInt(cmd.getOptionValue("reducers", String.valueOf(NUMBER_OF_REDUCERS)));
+                int combineBufferMB = Integer.parseInt(cmd.getOptionValue("combine-memory", String.valueOf(COMBINE_BUFFER_MB)));
+                if (numOfReducers <= 0 || combineBufferMB <= 0) {
+                    throw new NumberFormatException("The number of reducers and the memory must be positive.");
+                }
+
+                new IndexMapReduce(argList.get(0), argList.get(1), numOfReducers,
+                        cmd.hasOption("combine"), (long) combineBufferMB << 20, cmd.hasOption("balance"),
+                        cmd.hasOption("sequence-file")).start();
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
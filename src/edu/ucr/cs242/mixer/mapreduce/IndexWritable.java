@@ -1,83 +1,113 @@
-package edu.ucr.cs242.mixer.mapreduce;
-
-import org.apache.hadoop.io.Writable;
-
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.stream.Collectors;
-
-public class IndexWritable implements Writable {
-    private int docId;
-    private int[] frequency;
-    private int[] position;
-
-    public int getDocId() {
-        return docId;
-    }
-
-    public int[] getFrequency() {
-        return frequency;
-    }
-
-    public int[] getPosition() {
-        return position;
-    }
-
-    public IndexWritable() {
-        docId = -1;
-        frequency = null;
-        position = null;
-    }
-
-    public IndexWritable(int docId, int[] frequency, int[] position) {
-        this.docId = docId;
-        this.frequency = frequency;
-        this.position = position;
-    }
-
-    private int[] readIntArray(DataInput dataInput) throws IOException {
-        int length = dataInput.readInt();
-        int[] array = new int[length];
-
-        for (int i = 0; i < length; i++) {
-            array[i] = dataInput.readInt();
-        }
-        return array;
-    }
-
-    private void writeIntArray(DataOutput dataOutput, int[] array) throws IOException {
-        dataOutput.writeInt(array.length);
-        for (int v : array) {
-            dataOutput.writeInt(v);
-        }
-    }
-
-    @Override
-    public void readFields(DataInput dataInput) throws IOException {
-        docId = dataInput.readInt();
-        frequency = readIntArray(dataInput);
-        position = readIntArray(dataInput);
-    }
-
-    @Override
-    public void write(DataOutput dataOutput) throws IOException {
-        dataOutput.writeInt(this.docId);
-        writeIntArray(dataOutput, this.frequency);
-        writeIntArray(dataOutput, position);
-    }
-
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(docId);
-        sb.append(Arrays.stream(frequency)
-                .mapToObj(String::valueOf)
-                .collect(Collectors.joining(",", ":", "|")));
-        sb.append(Arrays.stream(position)
-                .mapToObj(String::valueOf)
-                .collect(Collectors.joining(",")));
-        return sb.toString();
-    }
-}
+package edu.ucr.cs242.mixer.mapreduce;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The posting of a term in a document: the frequency in each field, and the positions in each field, concatenated
+ * in field order (so there are as many positions as the sum of the frequencies).
+ *
+ * Serialized as variable-length integers, since most of them are tiny: the docId, the number of fields, the frequency
+ * in each field, then the positions in each field as the difference to the previous one in the field.
+ */
+public class IndexWritable implements Writable {
+    private int docId;
+    private int[] frequency;
+    private int[] position;
+
+    public int getDocId() {
+        return docId;
+    }
+
+    public int[] getFrequency() {
+        return frequency;
+    }
+
+    public int[] getPosition() {
+        return position;
+    }
+
+    public IndexWritable() {
+        docId = -1;
+        frequency = null;
+        position = null;
+    }
+
+    public IndexWritable(int docId, int[] frequency, int[] position) {
+        this.docId = docId;
+        this.frequency = frequency;
+        this.position = position;
+    }
+
+    /**
+     * Write the frequencies and the positions of a posting, without the docId.
+     */
+    static void writeFrequencyAndPosition(DataOutput dataOutput, int[] frequency, int[] position) throws IOException {
+        WritableUtils.writeVInt(dataOutput, frequency.length);
+        for (int freq : frequency) {
+            WritableUtils.writeVInt(dataOutput, freq);
+        }
+
+        int i = 0;
+        for (int freq : frequency) {
+            int lastPosition = 0;
+            for (int end = i + freq; i < end; i++) {
+                WritableUtils.writeVInt(dataOutput, position[i] - lastPosition);
+                lastPosition = position[i];
+            }
+        }
+    }
+
+    /**
+     * Read the frequencies and the positions written by {@link #writeFrequencyAndPosition}, into this posting.
+     */
+    void readFrequencyAndPosition(DataInput dataInput) throws IOException {
+        frequency = new int[WritableUtils.readVInt(dataInput)];
+        int numOfPositions = 0;
+        for (int f = 0; f < frequency.length; f++) {
+            frequency[f] = WritableUtils.readVInt(dataInput);
+            numOfPositions += frequency[f];
+        }
+
+        position = new int[numOfPositions];
+        int i = 0;
+        for (int freq : frequency) {
+            int lastPosition = 0;
+            for (int end = i + freq; i < end; i++) {
+                lastPosition += WritableUtils.readVInt(dataInput);
+                position[i] = lastPosition;
+            }
+        }
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        docId = WritableUtils.readVInt(dataInput);
+        readFrequencyAndPosition(dataInput);
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, docId);
+        writeFrequencyAndPosition(dataOutput, frequency, position);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(docId);
+        sb.append(Arrays.stream(frequency)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(",", ":", "|")));
+        sb.append(Arrays.stream(position)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(",")));
+        return sb.toString();
+    }
+}
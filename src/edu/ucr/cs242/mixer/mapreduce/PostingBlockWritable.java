@@ -0,0 +1,145 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The postings of a term in many documents, encoded compactly as variable-length integers.
+ *
+ * Each posting is the docId (as the difference to the previous one in the block), followed by the frequencies and
+ * the positions as serialized by {@link IndexWritable}.
+ */
+public class PostingBlockWritable implements Writable {
+    /**
+     * Receive the postings in a block.
+     */
+    @FunctionalInterface
+    public interface PostingConsumer {
+        void accept(IndexWritable posting) throws IOException, InterruptedException;
+    }
+
+    private int numOfPostings = 0;
+    private int firstDocId = 0;
+    private int lastDocId = 0;
+    private final DataOutputBuffer data = new DataOutputBuffer();
+    private final DataInputBuffer input = new DataInputBuffer();
+
+    public int getNumOfPostings() {
+        return numOfPostings;
+    }
+
+    /**
+     * The document id of the first posting added, 0 if the block is empty.
+     */
+    public int getFirstDocId() {
+        return firstDocId;
+    }
+
+    /**
+     * The number of bytes of the encoded postings.
+     */
+    public int getLength() {
+        return data.getLength();
+    }
+
+    public void clear() {
+        numOfPostings = 0;
+        firstDocId = 0;
+        lastDocId = 0;
+        data.reset();
+    }
+
+    /**
+     * Append a posting to the block.
+     * @param docId     The document id.
+     * @param frequency The frequency in each field.
+     * @param position  The positions in each field, in field order, ascending in each field.
+     */
+    public void add(int docId, int[] frequency, int[] position) throws IOException {
+        if (numOfPostings == 0) {
+            firstDocId = docId;
+        }
+        WritableUtils.writeVInt(data, docId - lastDocId);
+        lastDocId = docId;
+
+        IndexWritable.writeFrequencyAndPosition(data, frequency, position);
+        ++numOfPostings;
+    }
+
+    /**
+     * Decode the postings in the block, in the order they were added.
+     */
+    public void forEach(PostingConsumer consumer) throws IOException, InterruptedException {
+        input.reset(data.getData(), data.getLength());
+
+        int docId = 0;
+        for (int n = 0; n < numOfPostings; n++) {
+            docId += WritableUtils.readVInt(input);
+
+            IndexWritable posting = new IndexWritable(docId, null, null);
+            posting.readFrequencyAndPosition(input);
+            consumer.accept(posting);
+        }
+    }
+
+    /**
+     * Decode the postings in a block one at a time, in the order they were added.
+     */
+    public class Cursor {
+        private final DataInputBuffer input = new DataInputBuffer();
+        private int remaining = numOfPostings;
+        private IndexWritable posting;
+
+        private Cursor() {
+            input.reset(data.getData(), data.getLength());
+        }
+
+        /**
+         * Move to the next posting.
+         * @return Whether there is a next posting.
+         */
+        public boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+
+            int docId = (posting != null ? posting.getDocId() : 0) + WritableUtils.readVInt(input);
+            posting = new IndexWritable(docId, null, null);
+            posting.readFrequencyAndPosition(input);
+            --remaining;
+            return true;
+        }
+
+        public IndexWritable get() {
+            return posting;
+        }
+    }
+
+    /**
+     * Open a cursor on the postings, which must not be modified while the cursor is in use.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        clear();
+        numOfPostings = WritableUtils.readVInt(dataInput);
+        int length = WritableUtils.readVInt(dataInput);
+        data.write(dataInput, length);
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, numOfPostings);
+        WritableUtils.writeVInt(dataOutput, data.getLength());
+        dataOutput.write(data.getData(), 0, data.getLength());
+    }
+}
@@ -0,0 +1,126 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The map output key of the index job, a term and a document id, so that the shuffle sorts the postings of a term
+ * by document id (secondary sort). Keys are grouped by term only (see {@link GroupingComparator}), and must be
+ * partitioned by term only (see {@link TermPartitioner}), so a reducer gets all postings of a term in one call.
+ */
+public class TermDocIdWritable implements WritableComparable<TermDocIdWritable> {
+    private final Text term = new Text();
+    private int docId;
+
+    public Text getTerm() {
+        return term;
+    }
+
+    public int getDocId() {
+        return docId;
+    }
+
+    public void set(String term, int docId) {
+        this.term.set(term);
+        this.docId = docId;
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        term.readFields(dataInput);
+        docId = dataInput.readInt();
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        term.write(dataOutput);
+        dataOutput.writeInt(docId);
+    }
+
+    @Override
+    public int compareTo(TermDocIdWritable o) {
+        int c = term.compareTo(o.term);
+        return c != 0 ? c : Integer.compare(docId, o.docId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TermDocIdWritable && compareTo((TermDocIdWritable) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return term.hashCode() * 31 + docId;
+    }
+
+    @Override
+    public String toString() {
+        return term + ":" + docId;
+    }
+
+    // Compare the serialized terms, the bytes after the vint length, as Text.Comparator.
+    private static int compareTerms(byte[] b1, int s1, byte[] b2, int s2) throws IOException {
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        return WritableComparator.compareBytes(b1, s1 + n1, WritableComparator.readVInt(b1, s1),
+                b2, s2 + n2, WritableComparator.readVInt(b2, s2));
+    }
+
+    // The offset of the document id, after the serialized term.
+    private static int docIdOffset(byte[] b, int s) throws IOException {
+        return s + WritableUtils.decodeVIntSize(b[s]) + WritableComparator.readVInt(b, s);
+    }
+
+    /**
+     * Sort the keys by term, then by document id, on the serialized bytes.
+     */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(TermDocIdWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int c = compareTerms(b1, s1, b2, s2);
+                return c != 0 ? c : Integer.compare(readInt(b1, docIdOffset(b1, s1)), readInt(b2, docIdOffset(b2, s2)));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    /**
+     * Group the keys by term only, on the serialized bytes.
+     */
+    public static class GroupingComparator extends WritableComparator {
+        public GroupingComparator() {
+            super(TermDocIdWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                return compareTerms(b1, s1, b2, s2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((TermDocIdWritable) a).term.compareTo(((TermDocIdWritable) b).term);
+        }
+    }
+
+    static {
+        WritableComparator.define(TermDocIdWritable.class, new Comparator());
+    }
+}
@@ -0,0 +1,96 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Partition the postings by term, ignoring the document id of the key, so that each reducer gets all postings
+ * of its terms, and about the same amount of postings.
+ *
+ * A few frequent terms have most of the postings, so hashing them leaves some reducers much busier than others.
+ * The heavy terms are assigned to reducers up front, from the term weights of a sample (see {@link #writeAssignment}),
+ * and the rest are hashed as usual.
+ */
+public class TermPartitioner<V> extends Partitioner<TermDocIdWritable, V> implements Configurable {
+    /**
+     * The path to the assignment file, `term\treducer` per line.
+     */
+    public static final String ASSIGNMENT_PATH = "edu.ucr.cs242.mixer.mapreduce.TermPartitioner.assignmentPath";
+
+    private Configuration conf;
+    private final Map<String, Integer> assignment = new HashMap<>();
+
+    /**
+     * Assign the heaviest terms to reducers, each to the least loaded one so far, and write the assignment.
+     * @param fs            The file system of the assignment file.
+     * @param file          The assignment file.
+     * @param weight        The weight of each term, e.g. its number of postings and positions in a sample.
+     * @param numOfTerms    The max number of terms to assign.
+     * @param numOfReducers The number of reducers.
+     */
+    public static void writeAssignment(FileSystem fs, Path file, Map<String, Long> weight,
+                                       int numOfTerms, int numOfReducers) throws IOException {
+        List<Map.Entry<String, Long>> terms = new ArrayList<>(weight.entrySet());
+        terms.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        // <load, reducer>, the least loaded reducer first
+        PriorityQueue<long[]> reducers = new PriorityQueue<>(numOfReducers,
+                Comparator.comparingLong((long[] r) -> r[0]).thenComparingLong(r -> r[1]));
+        for (int i = 0; i < numOfReducers; i++) {
+            reducers.add(new long[] { 0, i });
+        }
+
+        try (FSDataOutputStream outputStream = fs.create(file, true);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> term : terms.subList(0, Math.min(numOfTerms, terms.size()))) {
+                long[] reducer = reducers.poll();
+                writer.write(term.getKey() + "\t" + reducer[1] + "\n");
+                reducer[0] += term.getValue();
+                reducers.add(reducer);
+            }
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        assignment.clear();
+
+        String assignmentPath = conf.get(ASSIGNMENT_PATH);
+        if (assignmentPath != null) {
+            Path file = new Path(assignmentPath);
+            try (InputStream inputStream = file.getFileSystem(conf).open(file);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] pair = line.split("\t");
+                    assignment.put(pair[0], Integer.parseInt(pair[1]));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the term assignment " + assignmentPath + ".", e);
+            }
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(TermDocIdWritable key, V value, int numPartitions) {
+        Text term = key.getTerm();
+        Integer reducer = assignment.isEmpty() ? null : assignment.get(term.toString());
+        return reducer != null && reducer < numPartitions ? reducer :
+                (term.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The link graph in compressed sparse row (CSR) form: the outgoing links of node i are
+ * targets[offsets[i]], ..., targets[offsets[i + 1] - 1]. Node ids are the exported page ids.
+ *
+ * SQLExporter writes it as link.bin, in big-endian:
+ * <pre>
+ *   int magic, int version, int numOfNodes, int numOfEdges,
+ *   int[numOfEdges] targets, int[numOfNodes + 1] offsets
+ * </pre>
+ * The targets come before the offsets, so the file can be written in one pass over the resolved links.
+ */
+public class LinkGraph {
+    public static final String LINK_GRAPH_FILE = "link.bin";
+
+    static final int MAGIC = 0x4D584C47; // MXLG
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final int numOfNodes;
+    private final int numOfEdges;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    public int getNumOfNodes() {
+        return numOfNodes;
+    }
+
+    public int getNumOfEdges() {
+        return numOfEdges;
+    }
+
+    /**
+     * @return The index of the first outgoing link of the node, use together with {@link #getTarget}.
+     */
+    public int getOffset(int node) {
+        return offsets.get(node);
+    }
+
+    public int getOutDegree(int node) {
+        return offsets.get(node + 1) - offsets.get(node);
+    }
+
+    public int getTarget(int index) {
+        return targets.get(index);
+    }
+
+    private LinkGraph(int numOfNodes, int numOfEdges, IntBuffer offsets, IntBuffer targets) {
+        this.numOfNodes = numOfNodes;
+        this.numOfEdges = numOfEdges;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Construct a link graph over in-memory arrays.
+     * @param numOfNodes The number of nodes.
+     * @param offsets    The index of the first outgoing link of each node, with one extra trailing entry.
+     * @param targets    The target nodes of all links.
+     */
+    public static LinkGraph of(int numOfNodes, int[] offsets, int[] targets) {
+        return new LinkGraph(numOfNodes, offsets[numOfNodes], IntBuffer.wrap(offsets), IntBuffer.wrap(targets));
+    }
+
+    /**
+     * The position of the offsets in a link graph file.
+     */
+    static long offsetsPosition(int numOfEdges) {
+        return HEADER_SIZE + (long) numOfEdges * 4;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Read a link graph file.
+     * @param file         The link graph file.
+     * @param memoryMapped Whether memory-map the file instead of reading it into heap (files up to 2 GB).
+     * @return The link graph.
+     */
+    public static LinkGraph read(Path file, boolean memoryMapped) throws IOException {
+        ByteBuffer buffer;
+        if (memoryMapped) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed.
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid link graph file " + file + ".");
+        }
+
+        int numOfNodes = buffer.getInt(8);
+        int numOfEdges = buffer.getInt(12);
+        IntBuffer targets = slice(buffer, HEADER_SIZE, numOfEdges * 4).asIntBuffer();
+        IntBuffer offsets = slice(buffer, (int) offsetsPosition(numOfEdges), (numOfNodes + 1) * 4).asIntBuffer();
+        return new LinkGraph(numOfNodes, numOfEdges, offsets, targets);
+    }
+}
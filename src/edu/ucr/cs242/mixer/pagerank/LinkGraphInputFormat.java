@@ -0,0 +1,169 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read a link graph file (see {@link LinkGraph}) as the first PageRank iteration input, in the same form as the
+ * text output of an iteration: key `docId,initialRank`, value the comma-joined outgoing links.
+ *
+ * The file is split by node ranges: the start and length of each {@link FileSplit} are node ids, not bytes.
+ */
+public class LinkGraphInputFormat extends FileInputFormat<Text, Text> {
+    /**
+     * The number of nodes per split, at most.
+     */
+    public static final String NODES_PER_SPLIT = "edu.ucr.cs242.mixer.pagerank.LinkGraphInputFormat.nodesPerSplit";
+
+    /**
+     * Read the number of nodes and edges in the header of a link graph file.
+     */
+    public static int[] readHeader(FileSystem fs, Path file) throws IOException {
+        try (DataInputStream input = fs.open(file)) {
+            if (input.readInt() != LinkGraph.MAGIC || input.readInt() != LinkGraph.VERSION) {
+                throw new IOException("Invalid link graph file " + file + ".");
+            }
+            return new int[] { input.readInt(), input.readInt() };
+        }
+    }
+
+    /**
+     * Count the nodes, and the nodes without outgoing links, in a link graph file.
+     */
+    public static long[] countNodes(FileSystem fs, Path file) throws IOException {
+        int[] header = readHeader(fs, file);
+        long numOfDanglingNodes = 0;
+
+        try (FSDataInputStream input = fs.open(file)) {
+            input.seek(LinkGraph.offsetsPosition(header[1]));
+            DataInputStream offsets = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+
+            int offset = offsets.readInt();
+            for (int node = 0; node < header[0]; node++) {
+                int nextOffset = offsets.readInt();
+                if (nextOffset == offset) {
+                    ++numOfDanglingNodes;
+                }
+                offset = nextOffset;
+            }
+        }
+
+        return new long[] { header[0], numOfDanglingNodes };
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        int nodesPerSplit = job.getConfiguration().getInt(NODES_PER_SPLIT, 100000);
+        List<InputSplit> splits = new ArrayList<>();
+
+        for (FileStatus status : listStatus(job)) {
+            Path file = status.getPath();
+            int numOfNodes = readHeader(file.getFileSystem(job.getConfiguration()), file)[0];
+
+            for (int start = 0; start < numOfNodes; start += nodesPerSplit) {
+                splits.add(new FileSplit(file, start, Math.min(nodesPerSplit, numOfNodes - start), new String[0]));
+            }
+        }
+
+        return splits;
+    }
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new LinkGraphRecordReader();
+    }
+
+    private static class LinkGraphRecordReader extends RecordReader<Text, Text> {
+        private FSDataInputStream input;
+        private int startNode;
+        private int numOfNodes;
+        private double initialRank;
+        // [node - startNode], with one extra trailing entry
+        private int[] offsets;
+
+        private int current = -1;
+        private final Text key = new Text();
+        private final Text value = new Text();
+        private final StringBuilder links = new StringBuilder();
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Configuration conf = context.getConfiguration();
+            Path file = split.getPath();
+            FileSystem fs = file.getFileSystem(conf);
+
+            int[] header = readHeader(fs, file);
+            initialRank = 1.0 / header[0];
+            startNode = (int) split.getStart();
+            numOfNodes = (int) split.getLength();
+
+            input = fs.open(file);
+            input.seek(LinkGraph.offsetsPosition(header[1]) + startNode * 4L);
+            offsets = new int[numOfNodes + 1];
+            for (int i = 0; i <= numOfNodes; i++) {
+                offsets[i] = input.readInt();
+            }
+
+            // The targets of the split are contiguous.
+            input.seek(LinkGraph.HEADER_SIZE + offsets[0] * 4L);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (++current >= numOfNodes) {
+                return false;
+            }
+
+            links.setLength(0);
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                if (links.length() > 0) {
+                    links.append(',');
+                }
+                links.append(input.readInt());
+            }
+
+            key.set((startNode + current) + "," + initialRank);
+            value.set(links.toString());
+            return true;
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return numOfNodes == 0 ? 1.0f : Math.min(1.0f, (float) current / numOfNodes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+}
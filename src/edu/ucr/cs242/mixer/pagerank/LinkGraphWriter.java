@@ -0,0 +1,86 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write the link graph file read by {@link LinkGraph}.
+ * Nodes must be added in ascending id order, nodes not added have no outgoing links.
+ */
+public class LinkGraphWriter implements Closeable {
+    private final FileChannel channel;
+    private final DataOutputStream output;
+    private final int numOfNodes;
+    // [node] -> index of its first outgoing link, with one extra trailing entry
+    private final int[] offsets;
+
+    private int nextNode = 0;
+    private int numOfEdges = 0;
+
+    /**
+     * Construct a link graph writer.
+     * @param file       The file to write.
+     * @param numOfNodes The number of nodes (max id + 1).
+     */
+    public LinkGraphWriter(Path file, int numOfNodes) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.numOfNodes = numOfNodes;
+        this.offsets = new int[numOfNodes + 1];
+
+        // The header is written on close, when the number of edges is known.
+        channel.position(LinkGraph.HEADER_SIZE);
+        this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    /**
+     * Append the outgoing links of a node.
+     * @param node       The node id, must be greater than the last added one.
+     * @param links      The target node ids, only the first `numOfLinks` are added.
+     * @param numOfLinks The number of links.
+     */
+    public void add(int node, int[] links, int numOfLinks) throws IOException {
+        if (node < nextNode || node >= numOfNodes) {
+            throw new IllegalArgumentException("Nodes must be added in ascending id order below " + numOfNodes +
+                    " (" + node + " after " + (nextNode - 1) + ").");
+        }
+        if (numOfEdges > Integer.MAX_VALUE - numOfLinks) {
+            throw new IllegalStateException("Too many edges for a link graph file.");
+        }
+
+        // Nodes skipped have no outgoing links.
+        for (; nextNode <= node; nextNode++) {
+            offsets[nextNode] = numOfEdges;
+        }
+
+        for (int i = 0; i < numOfLinks; i++) {
+            output.writeInt(links[i]);
+        }
+        numOfEdges += numOfLinks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (; nextNode <= numOfNodes; nextNode++) {
+            offsets[nextNode] = numOfEdges;
+        }
+
+        try (FileChannel channel = this.channel) {
+            for (int offset : offsets) {
+                output.writeInt(offset);
+            }
+            output.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(LinkGraph.HEADER_SIZE);
+            header.putInt(LinkGraph.MAGIC).putInt(LinkGraph.VERSION).putInt(numOfNodes).putInt(numOfEdges).flip();
+            channel.write(header, 0);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Compare the iterations and the wall time to converge of the PageRank solvers on the same link graph:
+ * the in-process engine with Jacobi, Gauss-Seidel (single thread) and block-asynchronous (multiple threads)
+ * updates, and optionally the Hadoop MapReduce job.
+ */
+public class PageRankBenchmark {
+    private final double dampingFactor;
+    private final double convergence;
+    private final int numOfThreads;
+    private final boolean runMapReduce;
+    private final String linkInputPath;
+    private final String benchmarkOutputPath;
+
+    /**
+     * Construct a PageRank benchmark, with given settings.
+     * @param dampingFactor       The damping factor use in PageRank calculation.
+     * @param convergence         The convergence limit (epsilon).
+     * @param numOfThreads        The number of threads for the Jacobi and block-asynchronous runs.
+     * @param runMapReduce        Whether also run the Hadoop MapReduce job.
+     * @param linkInputPath       The path to the SQLExporter's link.json, or link.bin.
+     * @param benchmarkOutputPath The folder to the output of each run, in its own sub-folder.
+     */
+    public PageRankBenchmark(double dampingFactor, double convergence, int numOfThreads, boolean runMapReduce,
+                             String linkInputPath, String benchmarkOutputPath) {
+        this.dampingFactor = dampingFactor;
+        this.convergence = convergence;
+        this.numOfThreads = numOfThreads;
+        this.runMapReduce = runMapReduce;
+        this.linkInputPath = linkInputPath;
+        this.benchmarkOutputPath = benchmarkOutputPath;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum;
+    }
+
+    private static void printResult(String solver, int numOfIterations, String elapsedTime, String distance) {
+        System.out.format("%-20s%12d%16s%16s%n", solver, numOfIterations, elapsedTime, distance);
+    }
+
+    private PageRankEngine runEngine(String name, int threads, boolean gaussSeidel) throws Exception {
+        PageRankEngine engine = new PageRankEngine(dampingFactor, convergence, threads, gaussSeidel, null,
+                linkInputPath, Paths.get(benchmarkOutputPath, name).toString());
+        engine.start();
+        return engine;
+    }
+
+    public void start() throws Exception {
+        // Warm up the JIT compiler first, so the first measured run is not slower for it.
+        runEngine("warmup", numOfThreads, false);
+
+        LocalDateTime startAt = LocalDateTime.now();
+        PageRankEngine jacobi = runEngine("jacobi", numOfThreads, false);
+        String jacobiTime = Utility.elapsedTime(startAt, LocalDateTime.now());
+
+        startAt = LocalDateTime.now();
+        PageRankEngine gaussSeidel = runEngine("gauss-seidel", 1, true);
+        String gaussSeidelTime = Utility.elapsedTime(startAt, LocalDateTime.now());
+
+        PageRankEngine blockAsync = null;
+        String blockAsyncTime = null;
+        if (numOfThreads > 1) {
+            startAt = LocalDateTime.now();
+            blockAsync = runEngine("block-async", numOfThreads, true);
+            blockAsyncTime = Utility.elapsedTime(startAt, LocalDateTime.now());
+        }
+
+        PageRankMapReduce mapReduce = null;
+        String mapReduceTime = null;
+        if (runMapReduce) {
+            startAt = LocalDateTime.now();
+            mapReduce = new PageRankMapReduce(dampingFactor, convergence, linkInputPath,
+                    Paths.get(benchmarkOutputPath, "mapreduce").toString());
+            mapReduce.start();
+            mapReduceTime = Utility.elapsedTime(startAt, LocalDateTime.now());
+        }
+
+        // The time includes loading the graph and writing the output.
+        System.out.println();
+        System.out.format("%-20s%12s%16s%16s%n", "Solver", "Iterations", "Elapsed Time", "L1 to Jacobi");
+        printResult("Jacobi (" + numOfThreads + ")", jacobi.getNumOfIterations(), jacobiTime, "0");
+        printResult("Gauss-Seidel (1)", gaussSeidel.getNumOfIterations(), gaussSeidelTime,
+                String.format("%.3e", distance(jacobi.getRanks(), gaussSeidel.getRanks())));
+        if (blockAsync != null) {
+            printResult("Block-async (" + numOfThreads + ")", blockAsync.getNumOfIterations(), blockAsyncTime,
+                    String.format("%.3e", distance(jacobi.getRanks(), blockAsync.getRanks())));
+        }
+        if (mapReduce != null) {
+            printResult("MapReduce", mapReduce.getNumOfIterations(), mapReduceTime, "-");
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("prbench: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: prbench [options] <link-input-path> <benchmark-output-path> " +
+                "[damping-factor] [convergence]");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("prbench [options] <link-input-path> <benchmark-output-path> " +
+                "[damping-factor] [convergence]", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double DAMPING_FACTOR = 0.85;
+        final double CONVERGENCE = 1e-6;
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+        Options options = new Options();
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .argName("NUM OF THREADS")
+                .desc("the number of threads for the Jacobi and block-asynchronous runs " +
+                        "(default: " + NUMBER_OF_THREADS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("m", "mapreduce", false, "also run the Hadoop MapReduce job on the same input");
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.size() < 2 || argList.size() > 4) {
+                printUsage();
+            }
+
+            try {
+                double dampingFactor = argList.size() >= 3 ? Double.parseDouble(argList.get(2)) : DAMPING_FACTOR;
+                double convergence = argList.size() >= 4 ? Double.parseDouble(argList.get(3)) : CONVERGENCE;
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                if (numOfThreads <= 0) {
+                    throw new NumberFormatException("The number of threads must be positive.");
+                }
+
+                new PageRankBenchmark(dampingFactor, convergence, numOfThreads, cmd.hasOption("mapreduce"),
+                        argList.get(0), argList.get(1)).start();
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import edu.ucr.cs242.Utility;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compute PageRank in this JVM instead of one Hadoop job per iteration.
+ *
+ * The link graph is kept in primitive CSR arrays, together with its transpose, so each iteration pulls the rank
+ * of every node from its inlinks. The nodes are processed in chunks by a pool of threads, reading the rank vector
+ * of the last iteration and writing the next one, which are swapped afterwards.
+ * The damping factor, the convergence limit and the output are the same as {@link PageRankMapReduce}.
+ *
+ * With Gauss-Seidel updates, there is only one rank vector updated in place, so a node already sees the new rank
+ * of the nodes before it in the same iteration, which takes fewer iterations to converge. Chunks processed at the
+ * same time see some of each other's updates (block-asynchronous), which converges to the same ranks.
+ *
+ * With a warm start from the last output, e.g. after recrawling some pages, the ranks are close already, so only
+ * the nodes reached by the changes are updated, until they settle down.
+ */
+public class PageRankEngine {
+    /**
+     * The number of nodes processed per task.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * The output file, named as the output of a single reducer for the importer.
+     */
+    public static final String OUTPUT_FILE = "part-r-00000";
+
+    private final double dampingFactor;
+    private final double convergence;
+    private final int numOfThreads;
+    private final boolean gaussSeidel;
+    private final String warmStartPath;
+    private final String linkInputPath;
+    private final String pageRankOutputPath;
+
+    private LinkGraph graph;
+    private int numOfNodes;
+    private int[] outDegree;
+    // The transpose of the graph: the inlinks of node i are inSources[inOffsets[i]], ..., inSources[inOffsets[i + 1] - 1]
+    private int[] inOffsets;
+    private int[] inSources;
+
+    private int numOfIterations;
+    private double[] ranks;
+
+    /**
+     * A task over a range of nodes, returning its part of a sum.
+     */
+    @FunctionalInterface
+    private interface ChunkTask {
+        double run(int start, int end);
+    }
+
+    /**
+     * Construct an in-process PageRank engine, with given settings.
+     * @param dampingFactor      The damping factor use in PageRank calculation.
+     * @param convergence        The convergence limit (epsilon) of the sum of rank changes in an iteration.
+     * @param numOfThreads       The number of threads for computing.
+     * @param gaussSeidel        Whether update the ranks in place, instead of from the last iteration.
+     * @param warmStartPath      The last PageRank output file, or its folder, to start from, or null to start from 1/N.
+     * @param linkInputPath      The path to the SQLExporter's link.bin, or link.json.
+     * @param pageRankOutputPath The folder to the output.
+     */
+    public PageRankEngine(double dampingFactor, double convergence, int numOfThreads, boolean gaussSeidel,
+                          String warmStartPath, String linkInputPath, String pageRankOutputPath) {
+        this.dampingFactor = dampingFactor;
+        this.convergence = convergence;
+        this.numOfThreads = numOfThreads;
+        this.gaussSeidel = gaussSeidel;
+        this.warmStartPath = warmStartPath;
+        this.linkInputPath = linkInputPath;
+        this.pageRankOutputPath = pageRankOutputPath;
+    }
+
+    // The max docId in index.json next to link.json, as link.json only has pages with outlinks.
+    private static int readMaxDocId(Path file) throws IOException {
+        String folder = file.toAbsolutePath().getParent().toString();
+        int maxDocId = -1;
+
+        try (BufferedReader reader = Utility.openJsonInput(folder, "index.json")) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    maxDocId = Math.max(maxDocId, new JSONObject(line).getInt("id"));
+                } catch (JSONException e) {
+                    if (!line.isEmpty()) {
+                        System.out.println("JSONException, with value of `" + line + "`");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            System.out.println("index.json is not found in " + folder + ", pages without outlinks are ignored.");
+        }
+
+        return maxDocId;
+    }
+
+    // Build the graph from link.json, the nodes are 0 to the max id (in either link.json or index.json).
+    private static LinkGraph readJsonLinks(Path file) throws IOException {
+        int[] offsets = new int[1024];
+        int[] targets = new int[1024];
+        // Nodes below numOfFilled have their offsets set, nodes below numOfNodes have appeared.
+        int numOfFilled = 0, numOfNodes = 0, numOfEdges = 0;
+
+        // link.json is written in ascending id order.
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject json = new JSONObject(line);
+                    int id = json.getInt("id");
+                    JSONArray links = json.getJSONArray("links");
+
+                    if (id + 1 > offsets.length) {
+                        offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, id + 1));
+                    }
+                    for (; numOfFilled <= id; numOfFilled++) {
+                        offsets[numOfFilled] = numOfEdges;
+                    }
+                    numOfNodes = Math.max(numOfNodes, id + 1);
+
+                    for (int i = 0; i < links.length(); i++) {
+                        if (numOfEdges == targets.length) {
+                            targets = Arrays.copyOf(targets, targets.length * 2);
+                        }
+                        targets[numOfEdges] = links.getInt(i);
+                        numOfNodes = Math.max(numOfNodes, targets[numOfEdges] + 1);
+                        ++numOfEdges;
+                    }
+                } catch (JSONException e) {
+                    if (!line.isEmpty()) {
+                        System.out.println("JSONException, with value of `" + line + "`");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        // The rest nodes have no outlinks.
+        numOfNodes = Math.max(numOfNodes, readMaxDocId(file) + 1);
+        offsets = Arrays.copyOf(offsets, numOfNodes + 1);
+        for (; numOfFilled <= numOfNodes; numOfFilled++) {
+            offsets[numOfFilled] = numOfEdges;
+        }
+        return LinkGraph.of(numOfNodes, offsets, Arrays.copyOf(targets, numOfEdges));
+    }
+
+    private void loadGraph() throws IOException {
+        Path input = Paths.get(linkInputPath);
+        graph = linkInputPath.endsWith(".bin") ? LinkGraph.read(input, true) : readJsonLinks(input);
+        numOfNodes = graph.getNumOfNodes();
+
+        outDegree = new int[numOfNodes];
+        inOffsets = new int[numOfNodes + 1];
+        for (int node = 0; node < numOfNodes; node++) {
+            outDegree[node] = graph.getOutDegree(node);
+            for (int i = graph.getOffset(node), end = i + outDegree[node]; i < end; i++) {
+                ++inOffsets[graph.getTarget(i) + 1];
+            }
+        }
+        for (int node = 0; node < numOfNodes; node++) {
+            inOffsets[node + 1] += inOffsets[node];
+        }
+
+        inSources = new int[graph.getNumOfEdges()];
+        int[] fill = Arrays.copyOf(inOffsets, numOfNodes);
+        for (int node = 0; node < numOfNodes; node++) {
+            for (int i = graph.getOffset(node), end = i + outDegree[node]; i < end; i++) {
+                inSources[fill[graph.getTarget(i)]++] = node;
+            }
+        }
+    }
+
+    // Run the task over all nodes in chunks, and sum up the results in chunk order.
+    private double runChunks(ExecutorService executor, ChunkTask task) throws InterruptedException, ExecutionException {
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int start = 0; start < numOfNodes; start += CHUNK_SIZE) {
+            int chunkStart = start, chunkEnd = Math.min(start + CHUNK_SIZE, numOfNodes);
+            tasks.add(() -> task.run(chunkStart, chunkEnd));
+        }
+
+        double sum = 0;
+        for (Future<Double> future : executor.invokeAll(tasks)) {
+            sum += future.get();
+        }
+        return sum;
+    }
+
+    // Start from the ranks of the last output if any, for the pages still there, otherwise from 1/N.
+    private void initRanks(double[] rank) throws IOException {
+        Arrays.fill(rank, Double.NaN);
+
+        int numOfWarmNodes = 0;
+        if (warmStartPath != null) {
+            try (BufferedReader reader = Utility.openJobOutput(warmStartPath)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        String[] keyPair = line.split("\t")[0].split(",");
+                        int node = Integer.parseInt(keyPair[0]);
+                        if (node < numOfNodes && Double.isNaN(rank[node])) {
+                            rank[node] = Double.parseDouble(keyPair[1]);
+                            ++numOfWarmNodes;
+                        }
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        if (!line.isEmpty()) {
+                            System.out.println("Invalid PageRank output line `" + line + "`");
+                        }
+                    }
+                }
+            }
+        }
+
+        double totalMass = 0;
+        for (int node = 0; node < numOfNodes; node++) {
+            if (Double.isNaN(rank[node])) {
+                rank[node] = 1.0 / numOfNodes;
+            }
+            totalMass += rank[node];
+        }
+        // Pages are added or removed since the last output.
+        for (int node = 0; node < numOfNodes; node++) {
+            rank[node] /= totalMass;
+        }
+
+        if (warmStartPath != null) {
+            System.out.println(numOfWarmNodes + " of the " + numOfNodes + " documents start from the ranks in " +
+                    warmStartPath + ".");
+        }
+    }
+
+    private double[] computeRanks(ExecutorService executor) throws IOException, InterruptedException, ExecutionException {
+        // rank / outDegree of each node, what it gives to each of its outlinks
+        double[] rank = new double[numOfNodes], contribution = new double[numOfNodes];
+        // In place with Gauss-Seidel updates, so swapping them is a no-op.
+        double[] nextRank = gaussSeidel ? rank : new double[numOfNodes];
+        double[] nextContribution = gaussSeidel ? contribution : new double[numOfNodes];
+
+        // The sum of the ranks of nodes without outlinks, and of all nodes, in each chunk
+        double[] chunkDanglingMass = new double[(numOfNodes + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        double[] chunkMass = new double[chunkDanglingMass.length];
+
+        // With a warm start, only the nodes with an inlink changed in the last iteration are updated. A change
+        // smaller than this is not passed on, so all those left out add up to less than the convergence limit.
+        boolean adaptive = warmStartPath != null;
+        double changeLimit = convergence / numOfNodes;
+        boolean[] dirty = new boolean[numOfNodes], nextDirty = new boolean[numOfNodes];
+        Arrays.fill(dirty, true);
+
+        initRanks(rank);
+        double danglingMass = 0;
+        for (int node = 0; node < numOfNodes; node++) {
+            contribution[node] = outDegree[node] > 0 ? rank[node] / outDegree[node] : 0;
+            danglingMass += outDegree[node] > 0 ? 0 : rank[node];
+        }
+
+        for (int iter = 1; ; iter++) {
+            LocalDateTime iterationStartAt = LocalDateTime.now();
+            double[] lastRank = rank, lastContribution = contribution;
+            double[] newRank = nextRank, newContribution = nextContribution;
+            boolean[] updating = dirty, changed = nextDirty;
+            double lastDanglingMass = danglingMass;
+
+            double residual = runChunks(executor, (start, end) -> {
+                double chunkResidual = 0, chunkDangling = 0, chunkTotal = 0;
+                // With Gauss-Seidel updates, the dangling mass follows the updates in this chunk as well.
+                double currentDanglingMass = lastDanglingMass;
+                for (int node = start; node < end; node++) {
+                    double docRank;
+                    if (adaptive && !updating[node]) {
+                        docRank = newRank[node] = lastRank[node];
+                        newContribution[node] = lastContribution[node];
+                    } else {
+                        double sum = 0;
+                        for (int i = inOffsets[node]; i < inOffsets[node + 1]; i++) {
+                            sum += lastContribution[inSources[i]];
+                        }
+
+                        // The rank of nodes without outlinks is spread over all nodes, as if they linked to every node.
+                        docRank = (1 - dampingFactor + dampingFactor * currentDanglingMass) / numOfNodes +
+                                dampingFactor * sum;
+                        double lastDocRank = lastRank[node];
+                        double change = Math.abs(docRank - lastDocRank);
+                        chunkResidual += change;
+                        newRank[node] = docRank;
+                        newContribution[node] = outDegree[node] > 0 ? docRank / outDegree[node] : 0;
+
+                        if (outDegree[node] == 0 && gaussSeidel) {
+                            currentDanglingMass += docRank - lastDocRank;
+                        }
+                        if (adaptive && change > changeLimit) {
+                            for (int i = graph.getOffset(node), e = i + outDegree[node]; i < e; i++) {
+                                changed[graph.getTarget(i)] = true;
+                            }
+                        }
+                    }
+
+                    chunkTotal += docRank;
+                    if (outDegree[node] == 0) {
+                        chunkDangling += docRank;
+                    }
+                }
+                chunkDanglingMass[start / CHUNK_SIZE] = chunkDangling;
+                chunkMass[start / CHUNK_SIZE] = chunkTotal;
+                return chunkResidual;
+            });
+
+            danglingMass = 0;
+            double totalMass = 0;
+            for (int i = 0; i < chunkMass.length; i++) {
+                danglingMass += chunkDanglingMass[i];
+                totalMass += chunkMass[i];
+            }
+
+            // The change in the ranks of all nodes, from the nodes without outlinks, or by the scaling below.
+            double globalChange = dampingFactor * Math.abs(danglingMass - lastDanglingMass);
+            if (gaussSeidel) {
+                // In-place updates do not keep the ranks summing up to 1 as the Jacobi ones do, and that error
+                // fades away slower than the rest, so scale the ranks back.
+                double scale = 1 / totalMass;
+                runChunks(executor, (start, end) -> {
+                    for (int node = start; node < end; node++) {
+                        newRank[node] *= scale;
+                        newContribution[node] *= scale;
+                    }
+                    return 0;
+                });
+                danglingMass *= scale;
+                globalChange += Math.abs(totalMass - 1);
+            }
+
+            nextRank = rank;
+            rank = newRank;
+            nextContribution = contribution;
+            contribution = newContribution;
+
+            int numOfUpdated = numOfNodes;
+            if (adaptive) {
+                if (globalChange / numOfNodes > changeLimit) {
+                    Arrays.fill(changed, true);
+                }
+                numOfUpdated = 0;
+                for (boolean update : updating) {
+                    numOfUpdated += update ? 1 : 0;
+                }
+                Arrays.fill(updating, false);
+                dirty = changed;
+                nextDirty = updating;
+            }
+
+            System.out.println("Iteration: " + iter + ", residual (L1) = " + residual + ", dangling mass = " +
+                    danglingMass + ", updated nodes = " + numOfUpdated + ". Elapsed time: " +
+                    Utility.elapsedTime(iterationStartAt, LocalDateTime.now()) + ".");
+            if (residual < convergence) {
+                System.out.println("Converged! PageRank has been computed.");
+                numOfIterations = iter;
+                return rank;
+            }
+        }
+    }
+
+    // The same lines as the reducer output: `docId,rank\toutlinks`
+    private void writeRanks(double[] rank) throws IOException {
+        Path outputPath = Paths.get(pageRankOutputPath);
+        Files.createDirectories(outputPath);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(outputPath.resolve(OUTPUT_FILE), StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (int node = 0; node < numOfNodes; node++) {
+                line.setLength(0);
+                line.append(node).append(',').append(rank[node]).append('\t');
+                for (int i = graph.getOffset(node), end = i + outDegree[node]; i < end; i++) {
+                    if (i > graph.getOffset(node)) {
+                        line.append(',');
+                    }
+                    line.append(graph.getTarget(i));
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * The number of iterations to converge, after start().
+     */
+    public int getNumOfIterations() {
+        return numOfIterations;
+    }
+
+    /**
+     * The rank of each node, after start().
+     */
+    public double[] getRanks() {
+        return ranks;
+    }
+
+    public void start() throws Exception {
+        LocalDateTime startAt = LocalDateTime.now();
+        System.out.println("PageRankEngine started at " + startAt.toLocalTime() + ". Threads: " + numOfThreads + ". " +
+                "Updates: " + (gaussSeidel ? "Gauss-Seidel" : "Jacobi") + ".");
+
+        loadGraph();
+        System.out.println("There are totally " + numOfNodes + " documents and " + graph.getNumOfEdges() + " links. " +
+                "Elapsed time: " + Utility.elapsedTime(startAt, LocalDateTime.now()) + ".");
+
+        ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        try {
+            ranks = computeRanks(executor);
+            writeRanks(ranks);
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.println("Summary: PageRank has been written to " + Paths.get(pageRankOutputPath, OUTPUT_FILE) +
+                ". Elapsed time: " + Utility.elapsedTime(startAt, LocalDateTime.now()) + ".");
+    }
+}
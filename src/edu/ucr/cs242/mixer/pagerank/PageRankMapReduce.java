@@ -1,258 +1,454 @@
-package edu.ucr.cs242.mixer.pagerank;
-
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
-import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.*;
-import java.util.*;
-import java.util.stream.Collectors;
-
-// Input: <PageN,RankN> -> <PageA, PageB, ...> (PageN's outlinks)
-class PageRankMapper extends Mapper<Text, Text, Text, Text> {
-    @Override
-    protected void map(Text key, Text value, Context context) throws IOException, InterruptedException {
-        String[] keyPair = key.toString().split(",");
-        int docId = Integer.parseInt(keyPair[0]);
-        double docRank = Double.parseDouble(keyPair[1]);
-
-        System.out.println("<" + docId + ":" + docRank + ">: " + value.toString());
-
-        // Is there any outlinks?
-        if (!value.toString().isEmpty()) {
-            List<Integer> outlinks = Arrays.stream(value.toString().split(","))
-                    .map(Integer::parseInt).collect(Collectors.toList());
-
-            System.out.println("<" + docId + ">: " + docRank / outlinks.size());
-
-            for (Integer page : outlinks) {
-                // PageK -> <PageN, RankN/NumOfPageNOutLinks>
-                context.write(new Text(page.toString()),
-                        new Text("i:" + docId + "," + docRank / outlinks.size()));
-            }
-        }
-
-        // PageN -> <PageA, PageB, ...> (PageN's outlinks)
-        context.write(new Text(String.valueOf(docId)), new Text("o:" + value.toString()));
-
-        // PageN -> RankN (original page rank)
-        context.write(new Text(String.valueOf(docId)), new Text("r:" + docRank));
-    }
-}
-
-// Output: <PageN, RankN> -> <PageA, PageB, ...> (PageN's outlinks)
-class PageRankReducer extends Reducer<Text, Text, Text, Text> {
-    private double dampingFactor;
-    private long numOfDocs;
-    private double convergenceScaleFactor;
-
-    public enum Counter {
-        CONVERGENCE
-    }
-
-    @Override
-    protected void setup(Context context) throws IOException, InterruptedException {
-        Configuration conf = context.getConfiguration();
-        numOfDocs = conf.getLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", 0);
-        dampingFactor = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", 0.85);
-        convergenceScaleFactor = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.convergenceScaleFactor", 1 / 1e-6);
-    }
-
-    @Override
-    protected void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-        double lastDocRank = 0;
-        double docRank = (1 - dampingFactor) / numOfDocs;
-        String outlinks = "";
-
-        for (Text value : values) {
-            String[] valuePair = value.toString().split(":");
-            if (valuePair.length == 2) {
-                // Inlinks with their PageRank?
-                if (valuePair[0].equals("i")) {
-                    // Is there any inlinks?
-                    if (!valuePair[1].isEmpty()) {
-                        String[] rankPair = valuePair[1].split(",");
-                        int docId = Integer.parseInt(rankPair[0]);
-                        double rankN = Double.parseDouble(rankPair[1]);
-                        docRank += rankN * dampingFactor;
-                    }
-                } else if (valuePair[0].equals("o")) {
-                    // Outlinks of this page
-                    outlinks = valuePair[1];
-                } else if (valuePair[0].equals("r")) {
-                    lastDocRank = Double.parseDouble(valuePair[1]);
-                }
-            }
-        }
-
-        long scaledDelta = (long) (Math.abs(docRank - lastDocRank) * convergenceScaleFactor);
-        context.getCounter(Counter.CONVERGENCE).increment(scaledDelta);
-
-        System.out.println("<" + key.toString() + "," + lastDocRank + "," + docRank + "," + scaledDelta + "> : " + outlinks);
-        context.write(new Text(key.toString() + "," + docRank), new Text(outlinks));
-    }
-}
-
-public class PageRankMapReduce {
-    private final String jsonLinkInputPath;
-    private final String pageRankOutputPath;
-    private final double dampingFactor;
-    private final double convergence;
-
-    /**
-     * Construct a PageRank MapReducer, with given settings.
-     * @param dampingFactor      The damping factor use in PageRank calculation.
-     * @param convergence        The convergence limit (epsilon).
-     * @param jsonLinkInputPath  The HDFS path to the SQLExporter's link.json.
-     * @param pageRankOutputPath The HDFS path to the output.
-     */
-    public PageRankMapReduce(double dampingFactor, double convergence, String jsonLinkInputPath, String pageRankOutputPath) {
-        this.dampingFactor = dampingFactor;
-        this.convergence = convergence;
-        this.jsonLinkInputPath = jsonLinkInputPath;
-        this.pageRankOutputPath = pageRankOutputPath;
-    }
-
-    private long processInputFile(Configuration jobConf, Path originalInputFile, Path processedFile) throws IOException {
-        FileSystem fs = originalInputFile.getFileSystem(jobConf);
-
-        long numOfDocs = 0;
-        Map<Integer, String> linkGraph = new HashMap<>();
-
-        System.out.println("Processing input file...");
-        try (DataInputStream inputStream = fs.open(originalInputFile);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    JSONObject json = new JSONObject(line);
-
-                    int id = json.getInt("id");
-                    String links = json.getJSONArray("links").toList().stream()
-                            .map(Objects::toString) // actually they are integers
-                            .collect(Collectors.joining(","));
-
-                    linkGraph.put(id, links);
-                    ++numOfDocs;
-                } catch (JSONException e) {
-                    // The last line of input file (the empty line), will trigger this exception.
-                    // But maybe possible some other problem occurred
-                    if (!line.isEmpty()) {
-                        System.out.println("JSONException, with value of `" + line + "`");
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }
-
-        System.out.println("There are totally " + numOfDocs + " documents.");
-
-        System.out.println("Writing to " + processedFile.toString() + "...");
-        double initialPageRank = 1.0 / (double) numOfDocs;
-        try (DataOutputStream outputStream = fs.create(processedFile);
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream))) {
-
-            long linesWritten = 0;
-            for (Map.Entry<Integer, String> entry : linkGraph.entrySet()) {
-                writer.write(entry.getKey() + "," + initialPageRank + "\t" + entry.getValue() + "\n");
-                ++linesWritten;
-
-                if (linesWritten % 10000 == 0 || linesWritten == numOfDocs) {
-                    System.out.println(linesWritten + " lines have been written.");
-                }
-            }
-        }
-
-        return numOfDocs;
-    }
-
-    private double runPageRankJob(Configuration jobConf, int iteration, Path inputPath, Path outputPath) throws Exception {
-        Job job = Job.getInstance(jobConf, "PageRank-Iteration-" + iteration);
-        job.setJarByClass(PageRankMapReduce.class);
-
-        job.setMapperClass(PageRankMapper.class);
-        job.setReducerClass(PageRankReducer.class);
-
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(Text.class);
-
-        job.setInputFormatClass(KeyValueTextInputFormat.class);
-
-        FileInputFormat.addInputPath(job, inputPath);
-        FileOutputFormat.setOutputPath(job, outputPath);
-
-        if (!job.waitForCompletion(true)) {
-            throw new Exception("Job PageRank-Iteration-" + iteration + " failed.");
-        }
-
-        long scaledConvergence = job.getCounters().findCounter(PageRankReducer.Counter.CONVERGENCE).getValue();
-        double retConv = (double) scaledConvergence * convergence;
-        System.out.println("Iteration: " + iteration + ", scaledConvergence = " + scaledConvergence +
-                ", convergence = " + retConv + ".");
-        return retConv;
-    }
-
-    public void start() throws Exception {
-        Configuration jobConf = new Configuration();
-        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", dampingFactor);
-        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.convergenceScaleFactor", 1 / convergence);
-
-        Path outputPath = new Path(pageRankOutputPath);
-        outputPath.getFileSystem(jobConf).delete(outputPath, true);
-        outputPath.getFileSystem(jobConf).mkdirs(outputPath);
-
-        Path inputPath = new Path(pageRankOutputPath, "link-input");
-        long numOfDocs = processInputFile(jobConf, new Path(jsonLinkInputPath), inputPath);
-        jobConf.setLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", numOfDocs);
-
-        for (int iter = 1; ; iter++) {
-            Path jobOutputPath = new Path(outputPath, "iteration-" + iter);
-
-            System.out.println("Iteration: " + iter +", output to " + jobOutputPath.toString() + ".");
-            if (runPageRankJob(jobConf, iter, inputPath, jobOutputPath) < convergence) {
-                System.out.println("Converged! PageRank has been computed.");
-                break;
-            }
-
-            inputPath = jobOutputPath;
-        }
-    }
-
-    public static void main(String[] args) throws Exception {
-        final double DAMPING_FACTOR = 0.85;
-        final double CONVERGENCE = 1e-6;
-
-        if (args.length < 2 || args.length > 4) {
-            System.out.println("usage: pagerank <json-link-input-path> <pagerank-output-path> [damping-factor] [convergence]");
-        } else {
-            try {
-                double dampingFactor = DAMPING_FACTOR;
-                double convergence = CONVERGENCE;
-
-                if (args.length >= 3) {
-                    dampingFactor = Double.parseDouble(args[2]);
-                }
-
-                if (args.length >= 4) {
-                    convergence = Double.parseDouble(args[3]);
-                }
-
-                new PageRankMapReduce(dampingFactor, convergence, args[0], args[1]).start();
-            } catch (NumberFormatException e) {
-                System.out.println("pagerank: invalid option(s)");
-                System.exit(1);
-            }
-
-        }
-    }
-}
+package edu.ucr.cs242.mixer.pagerank;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Input: <PageN,RankN> -> <PageA, PageB, ...> (PageN's outlinks)
+class PageRankMapper extends Mapper<Text, Text, Text, Text> {
+    @Override
+    protected void map(Text key, Text value, Context context) throws IOException, InterruptedException {
+        String[] keyPair = key.toString().split(",");
+        int docId = Integer.parseInt(keyPair[0]);
+        double docRank = Double.parseDouble(keyPair[1]);
+
+        System.out.println("<" + docId + ":" + docRank + ">: " + value.toString());
+
+        // Is there any outlinks?
+        if (!value.toString().isEmpty()) {
+            List<Integer> outlinks = Arrays.stream(value.toString().split(","))
+                    .map(Integer::parseInt).collect(Collectors.toList());
+
+            System.out.println("<" + docId + ">: " + docRank / outlinks.size());
+
+            for (Integer page : outlinks) {
+                // PageK -> <PageN, RankN/NumOfPageNOutLinks>
+                context.write(new Text(page.toString()),
+                        new Text("i:" + docId + "," + docRank / outlinks.size()));
+            }
+        }
+
+        // PageN -> <PageA, PageB, ...> (PageN's outlinks)
+        context.write(new Text(String.valueOf(docId)), new Text("o:" + value.toString()));
+
+        // PageN -> RankN (original page rank)
+        context.write(new Text(String.valueOf(docId)), new Text("r:" + docRank));
+    }
+}
+
+// Output: <PageN, RankN> -> <PageA, PageB, ...> (PageN's outlinks)
+class PageRankReducer extends Reducer<Text, Text, Text, Text> {
+    private double dampingFactor;
+    private long numOfDocs;
+    private double danglingMass;
+    // The residual and the dangling rank of this reducer, rounded into the counters once at cleanup.
+    private double residual;
+    private double danglingRank;
+
+    public enum Counter {
+        // The L1 residual, i.e. the sum of rank changes
+        CONVERGENCE,
+        // The sum of the ranks of pages without outlinks
+        DANGLING
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        numOfDocs = conf.getLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", 0);
+        dampingFactor = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", 0.85);
+        danglingMass = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", 0);
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        double lastDocRank = 0;
+        // The rank of pages without outlinks is spread over all pages, as if they linked to every page.
+        double docRank = (1 - dampingFactor) / numOfDocs + dampingFactor * danglingMass / numOfDocs;
+        String outlinks = "";
+
+        for (Text value : values) {
+            String[] valuePair = value.toString().split(":");
+            if (valuePair.length == 2) {
+                // Inlinks with their PageRank?
+                if (valuePair[0].equals("i")) {
+                    // Is there any inlinks?
+                    if (!valuePair[1].isEmpty()) {
+                        String[] rankPair = valuePair[1].split(",");
+                        int docId = Integer.parseInt(rankPair[0]);
+                        double rankN = Double.parseDouble(rankPair[1]);
+                        docRank += rankN * dampingFactor;
+                    }
+                } else if (valuePair[0].equals("o")) {
+                    // Outlinks of this page
+                    outlinks = valuePair[1];
+                } else if (valuePair[0].equals("r")) {
+                    lastDocRank = Double.parseDouble(valuePair[1]);
+                }
+            }
+        }
+
+        double delta = Math.abs(docRank - lastDocRank);
+        residual += delta;
+        if (outlinks.isEmpty()) {
+            danglingRank += docRank;
+        }
+
+        System.out.println("<" + key.toString() + "," + lastDocRank + "," + docRank + "," + delta + "> : " + outlinks);
+        context.write(new Text(key.toString() + "," + docRank), new Text(outlinks));
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        context.getCounter(Counter.CONVERGENCE).increment(Math.round(residual * PageRankMapReduce.COUNTER_SCALE_FACTOR));
+        context.getCounter(Counter.DANGLING).increment(Math.round(danglingRank * PageRankMapReduce.COUNTER_SCALE_FACTOR));
+    }
+}
+
+public class PageRankMapReduce {
+    /**
+     * The scale of the ranks summed up in counters, which are integers.
+     * Each reducer sums its ranks as doubles and rounds the sum once, so the error is below 1e-12 per reducer.
+     */
+    static final double COUNTER_SCALE_FACTOR = 1e12;
+
+    private final String jsonLinkInputPath;
+    private final String pageRankOutputPath;
+    private final double dampingFactor;
+    private final double convergence;
+
+    private int numOfIterations;
+
+    /**
+     * Construct a PageRank MapReducer, with given settings.
+     * @param dampingFactor      The damping factor use in PageRank calculation.
+     * @param convergence        The convergence limit (epsilon).
+     * @param jsonLinkInputPath  The HDFS path to the SQLExporter's link.json, or link.bin (the binary link graph).
+     * @param pageRankOutputPath The HDFS path to the output.
+     */
+    public PageRankMapReduce(double dampingFactor, double convergence, String jsonLinkInputPath, String pageRankOutputPath) {
+        this.dampingFactor = dampingFactor;
+        this.convergence = convergence;
+        this.jsonLinkInputPath = jsonLinkInputPath;
+        this.pageRankOutputPath = pageRankOutputPath;
+    }
+
+    // Read all docIds in index.json (or index.json.gz) next to link.json, as link.json only has pages with outlinks.
+    private static void readDocIds(FileSystem fs, Path folder, Map<Integer, String> linkGraph) throws IOException {
+        Path indexFile = new Path(folder, "index.json");
+        if (!fs.exists(indexFile)) {
+            indexFile = new Path(folder, "index.json.gz");
+        }
+        if (!fs.exists(indexFile)) {
+            System.out.println("index.json is not found in " + folder.toString() + ", pages without outlinks are ignored.");
+            return;
+        }
+
+        System.out.println("Processing " + indexFile.toString() + "...");
+        InputStream inputStream = fs.open(indexFile);
+        CompressionCodec codec = new CompressionCodecFactory(fs.getConf()).getCodec(indexFile);
+        if (codec != null) {
+            inputStream = codec.createInputStream(inputStream);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    linkGraph.putIfAbsent(new JSONObject(line).getInt("id"), "");
+                } catch (JSONException e) {
+                    if (!line.isEmpty()) {
+                        System.out.println("JSONException, with value of `" + line + "`");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrite link.json as the input of the first iteration, with all pages in index.json.
+     * @return The number of pages, and the number of pages without outlinks.
+     */
+    static long[] processInputFile(Configuration jobConf, Path originalInputFile, Path processedFile) throws IOException {
+        FileSystem fs = originalInputFile.getFileSystem(jobConf);
+
+        Map<Integer, String> linkGraph = new HashMap<>();
+
+        System.out.println("Processing input file...");
+        try (DataInputStream inputStream = fs.open(originalInputFile);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject json = new JSONObject(line);
+
+                    int id = json.getInt("id");
+                    String links = json.getJSONArray("links").toList().stream()
+                            .map(Objects::toString) // actually they are integers
+                            .collect(Collectors.joining(","));
+
+                    linkGraph.put(id, links);
+                } catch (JSONException e) {
+                    // The last line of input file (the empty line), will trigger this exception.
+                    // But maybe possible some other problem occurred
+                    if (!line.isEmpty()) {
+                        System.out.println("JSONException, with value of `" + line + "`");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        readDocIds(fs, originalInputFile.getParent(), linkGraph);
+
+        long numOfDocs = linkGraph.size();
+        long numOfDanglingDocs = linkGraph.values().stream().filter(String::isEmpty).count();
+        System.out.println("There are totally " + numOfDocs + " documents, " +
+                numOfDanglingDocs + " of which have no outlinks.");
+
+        System.out.println("Writing to " + processedFile.toString() + "...");
+        double initialPageRank = 1.0 / (double) numOfDocs;
+        try (DataOutputStream outputStream = fs.create(processedFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream))) {
+
+            long linesWritten = 0;
+            for (Map.Entry<Integer, String> entry : linkGraph.entrySet()) {
+                writer.write(entry.getKey() + "," + initialPageRank + "\t" + entry.getValue() + "\n");
+                ++linesWritten;
+
+                if (linesWritten % 10000 == 0 || linesWritten == numOfDocs) {
+                    System.out.println(linesWritten + " lines have been written.");
+                }
+            }
+        }
+
+        return new long[] { numOfDocs, numOfDanglingDocs };
+    }
+
+    private double runPageRankJob(Configuration jobConf, int iteration, Path inputPath, Path outputPath,
+                                  Class<? extends InputFormat<?, ?>> inputFormatClass) throws Exception {
+        Job job = Job.getInstance(jobConf, "PageRank-Iteration-" + iteration);
+        job.setJarByClass(PageRankMapReduce.class);
+
+        job.setMapperClass(PageRankMapper.class);
+        job.setReducerClass(PageRankReducer.class);
+
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        job.setInputFormatClass(inputFormatClass);
+
+        FileInputFormat.addInputPath(job, inputPath);
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        if (!job.waitForCompletion(true)) {
+            throw new Exception("Job PageRank-Iteration-" + iteration + " failed.");
+        }
+
+        double residual = job.getCounters().findCounter(PageRankReducer.Counter.CONVERGENCE).getValue() / COUNTER_SCALE_FACTOR;
+        double danglingMass = job.getCounters().findCounter(PageRankReducer.Counter.DANGLING).getValue() / COUNTER_SCALE_FACTOR;
+        // Spread over all pages in the next iteration.
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", danglingMass);
+
+        System.out.println("Iteration: " + iteration + ", residual (L1) = " + residual +
+                ", dangling mass = " + danglingMass + ".");
+        return residual;
+    }
+
+    /**
+     * The number of iterations to converge, after start().
+     */
+    public int getNumOfIterations() {
+        return numOfIterations;
+    }
+
+    public void start() throws Exception {
+        Configuration jobConf = new Configuration();
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", dampingFactor);
+
+        Path outputPath = new Path(pageRankOutputPath);
+        outputPath.getFileSystem(jobConf).delete(outputPath, true);
+        outputPath.getFileSystem(jobConf).mkdirs(outputPath);
+
+        Path inputPath;
+        long[] numOfDocs;
+        // The binary link graph is read by the first iteration directly, without rewriting it as text.
+        Class<? extends InputFormat<?, ?>> inputFormatClass;
+        if (jsonLinkInputPath.endsWith(".bin")) {
+            inputPath = new Path(jsonLinkInputPath);
+            numOfDocs = LinkGraphInputFormat.countNodes(inputPath.getFileSystem(jobConf), inputPath);
+            inputFormatClass = LinkGraphInputFormat.class;
+            System.out.println("There are totally " + numOfDocs[0] + " documents, " +
+                    numOfDocs[1] + " of which have no outlinks.");
+        } else {
+            inputPath = new Path(pageRankOutputPath, "link-input");
+            numOfDocs = processInputFile(jobConf, new Path(jsonLinkInputPath), inputPath);
+            inputFormatClass = KeyValueTextInputFormat.class;
+        }
+        jobConf.setLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", numOfDocs[0]);
+        // All pages start with the same rank.
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", (double) numOfDocs[1] / numOfDocs[0]);
+
+        for (int iter = 1; ; iter++) {
+            Path jobOutputPath = new Path(outputPath, "iteration-" + iter);
+
+            System.out.println("Iteration: " + iter +", output to " + jobOutputPath.toString() + ".");
+            if (runPageRankJob(jobConf, iter, inputPath, jobOutputPath, inputFormatClass) < convergence) {
+                System.out.println("Converged! PageRank has been computed.");
+                numOfIterations = iter;
+                break;
+            }
+
+            inputPath = jobOutputPath;
+            inputFormatClass = KeyValueTextInputFormat.class;
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("pagerank: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: pagerank [options] <link-input-path> <pagerank-output-path> " +
+                "[damping-factor] [convergence]");
+        System.out.println("<link-input-path> is either the link.json or the link.bin of exporter");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("pagerank [options] <link-input-path> <pagerank-output-path> " +
+                "[damping-factor] [convergence]", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double DAMPING_FACTOR = 0.85;
+        final double CONVERGENCE = 1e-6;
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_REDUCERS = 1;
+
+        Options options = new Options();
+        options.addOption("l", "local", false,
+                "compute in this JVM with local files, instead of one Hadoop job per iteration");
+
+        options.addOption("g", "gauss-seidel", false,
+                "update the ranks in place (Gauss-Seidel, block-asynchronous with threads), with --local");
+
+        options.addOption(Option.builder("w")
+                .longOpt("warm-start")
+                .argName("PATH")
+                .desc("start from the ranks in the last output (e.g. part-r-00000, or the folder of the part files), " +
+                        "and only update the pages reached by the changes since, with --local")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .argName("NUM OF THREADS")
+                .desc("the number of threads for computing, with --local (default: " + NUMBER_OF_THREADS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("s", "schimmy", false,
+                "shuffle only the rank messages, merging the link graph in the reducers from the last iteration output");
+
+        options.addOption(Option.builder("r")
+                .longOpt("reducers")
+                .argName("NUM OF REDUCERS")
+                .desc("the number of reducers, and so of output part files, with --schimmy " +
+                        "(default: " + NUMBER_OF_REDUCERS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.size() < 2 || argList.size() > 4) {
+                printUsage();
+            }
+
+            try {
+                double dampingFactor = DAMPING_FACTOR;
+                double convergence = CONVERGENCE;
+
+                if (argList.size() >= 3) {
+                    dampingFactor = Double.parseDouble(argList.get(2));
+                }
+
+                if (argList.size() >= 4) {
+                    convergence = Double.parseDouble(argList.get(3));
+                }
+
+                if (cmd.hasOption("local")) {
+                    int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                    if (numOfThreads <= 0) {
+                        throw new NumberFormatException("The number of threads must be positive.");
+                    }
+
+                    String warmStartPath = cmd.getOptionValue("warm-start");
+                    if (warmStartPath != null && !Files.exists(Paths.get(warmStartPath))) {
+                        printMessage("invalid warm start path (not exist)");
+                        printUsage();
+                    }
+
+                    new PageRankEngine(dampingFactor, convergence, numOfThreads, cmd.hasOption("gauss-seidel"),
+                            warmStartPath, argList.get(0), argList.get(1)).start();
+                } else if (cmd.hasOption("schimmy")) {
+                    int numOfReducers = Integer.parseInt(cmd.getOptionValue("reducers", String.valueOf(NUMBER_OF_REDUCERS)));
+                    if (numOfReducers <= 0) {
+                        throw new NumberFormatException("The number of reducers must be positive.");
+                    }
+
+                    new PageRankSchimmy(dampingFactor, convergence, numOfReducers, argList.get(0), argList.get(1)).start();
+                } else {
+                    new PageRankMapReduce(dampingFactor, convergence, argList.get(0), argList.get(1)).start();
+                }
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
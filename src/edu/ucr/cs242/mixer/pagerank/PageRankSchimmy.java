@@ -0,0 +1,344 @@
+package edu.ucr.cs242.mixer.pagerank;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+// Input: <PageN,RankN> -> <PageA, PageB, ...> (PageN's outlinks)
+// Output: <PageN> -> <RankN> -> <PageA, PageB, ...>
+class SchimmyPartitionMapper extends Mapper<Text, Text, IntWritable, Text> {
+    private final IntWritable docId = new IntWritable();
+    private final Text node = new Text();
+
+    @Override
+    protected void map(Text key, Text value, Context context) throws IOException, InterruptedException {
+        String[] keyPair = key.toString().split(",");
+        docId.set(Integer.parseInt(keyPair[0]));
+        node.set(keyPair[1] + "\t" + value.toString());
+        context.write(docId, node);
+    }
+}
+
+// Output: <PageN,RankN> -> <PageA, PageB, ...>, partitioned and sorted as the shuffle of SchimmyMapper
+class SchimmyPartitionReducer extends Reducer<IntWritable, Text, Text, Text> {
+    private final Text key = new Text();
+    private final Text links = new Text();
+
+    @Override
+    protected void reduce(IntWritable docId, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        for (Text value : values) {
+            String[] node = value.toString().split("\t", -1);
+            key.set(docId.get() + "," + node[0]);
+            links.set(node.length > 1 ? node[1] : "");
+            context.write(key, links);
+        }
+    }
+}
+
+// Input: <PageN,RankN> -> <PageA, PageB, ...> (PageN's outlinks)
+// Output: PageK -> RankN/NumOfPageNOutLinks, only the rank messages, the graph itself is not shuffled
+class SchimmyMapper extends Mapper<Text, Text, IntWritable, DoubleWritable> {
+    private final IntWritable target = new IntWritable();
+    private final DoubleWritable contribution = new DoubleWritable();
+
+    @Override
+    protected void map(Text key, Text value, Context context) throws IOException, InterruptedException {
+        String links = value.toString();
+        if (links.isEmpty()) {
+            return;
+        }
+
+        String[] keyPair = key.toString().split(",");
+        String[] outlinks = links.split(",");
+        contribution.set(Double.parseDouble(keyPair[1]) / outlinks.length);
+
+        for (String page : outlinks) {
+            target.set(Integer.parseInt(page));
+            context.write(target, contribution);
+        }
+    }
+}
+
+// Pre-sum the rank messages to the same page.
+class SchimmyCombiner extends Reducer<IntWritable, DoubleWritable, IntWritable, DoubleWritable> {
+    private final DoubleWritable sum = new DoubleWritable();
+
+    @Override
+    protected void reduce(IntWritable key, Iterable<DoubleWritable> values, Context context) throws IOException, InterruptedException {
+        double total = 0;
+        for (DoubleWritable value : values) {
+            total += value.get();
+        }
+        sum.set(total);
+        context.write(key, sum);
+    }
+}
+
+// Output: <PageN, RankN> -> <PageA, PageB, ...> (PageN's outlinks)
+// The graph is merged from the partition of the last iteration output, with the same number as this reducer.
+// That partition was written by the reducer with the same number, so it has the same pages in the same order.
+class SchimmyReducer extends Reducer<IntWritable, DoubleWritable, Text, Text> {
+    private double dampingFactor;
+    private long numOfDocs;
+    private double danglingMass;
+    // The residual and the dangling rank of this reducer, rounded into the counters once at cleanup.
+    private double residual;
+    private double danglingRank;
+
+    private BufferedReader graphReader;
+    // The next page in the graph partition, -1 at the end
+    private int graphDocId;
+    private double graphDocRank;
+    private String graphOutlinks;
+
+    private final Text outputKey = new Text();
+    private final Text outputValue = new Text();
+
+    public enum Counter {
+        // The L1 residual, i.e. the sum of rank changes
+        CONVERGENCE,
+        // The sum of the ranks of pages without outlinks
+        DANGLING
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        numOfDocs = conf.getLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", 0);
+        dampingFactor = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", 0.85);
+        danglingMass = conf.getDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", 0);
+
+        int partition = context.getTaskAttemptID().getTaskID().getId();
+        Path graphFile = new Path(conf.get("edu.ucr.cs242.mixer.pagerank.PageRankSchimmy.graphPath"),
+                String.format("part-r-%05d", partition));
+        FileSystem fs = graphFile.getFileSystem(conf);
+        graphReader = new BufferedReader(new InputStreamReader(fs.open(graphFile), StandardCharsets.UTF_8));
+        nextGraphNode();
+    }
+
+    private void nextGraphNode() throws IOException {
+        String line;
+        do {
+            line = graphReader.readLine();
+        } while (line != null && line.isEmpty());
+
+        if (line == null) {
+            graphDocId = -1;
+        } else {
+            String[] node = line.split("\t", -1);
+            String[] keyPair = node[0].split(",");
+            graphDocId = Integer.parseInt(keyPair[0]);
+            graphDocRank = Double.parseDouble(keyPair[1]);
+            graphOutlinks = node.length > 1 ? node[1] : "";
+        }
+    }
+
+    private void writeNode(Context context, int docId, double lastDocRank, double inlinkRank, String outlinks)
+            throws IOException, InterruptedException {
+        // The rank of pages without outlinks is spread over all pages, as if they linked to every page.
+        double docRank = (1 - dampingFactor) / numOfDocs + (inlinkRank + danglingMass / numOfDocs) * dampingFactor;
+
+        residual += Math.abs(docRank - lastDocRank);
+        if (outlinks.isEmpty()) {
+            danglingRank += docRank;
+        }
+
+        outputKey.set(docId + "," + docRank);
+        outputValue.set(outlinks);
+        context.write(outputKey, outputValue);
+    }
+
+    // Write the pages before the given one, which have no inlinks.
+    private void skipGraphNodes(Context context, int beforeDocId) throws IOException, InterruptedException {
+        while (graphDocId != -1 && (beforeDocId == -1 || graphDocId < beforeDocId)) {
+            writeNode(context, graphDocId, graphDocRank, 0, graphOutlinks);
+            nextGraphNode();
+        }
+    }
+
+    @Override
+    protected void reduce(IntWritable key, Iterable<DoubleWritable> values, Context context) throws IOException, InterruptedException {
+        double inlinkRank = 0;
+        for (DoubleWritable value : values) {
+            inlinkRank += value.get();
+        }
+
+        int docId = key.get();
+        skipGraphNodes(context, docId);
+
+        if (graphDocId == docId) {
+            writeNode(context, docId, graphDocRank, inlinkRank, graphOutlinks);
+            nextGraphNode();
+        } else {
+            // A page only known by its inlinks, as a page without outlinks.
+            writeNode(context, docId, 0, inlinkRank, "");
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        skipGraphNodes(context, -1);
+        graphReader.close();
+
+        context.getCounter(Counter.CONVERGENCE).increment(Math.round(residual * PageRankMapReduce.COUNTER_SCALE_FACTOR));
+        context.getCounter(Counter.DANGLING).increment(Math.round(danglingRank * PageRankMapReduce.COUNTER_SCALE_FACTOR));
+    }
+}
+
+/**
+ * PageRank MapReduce with the Schimmy design pattern: the mappers emit only the rank messages, as binary
+ * writables pre-summed by a combiner, and each reducer merges them with its partition of the graph, read from
+ * the last iteration output directly instead of being shuffled.
+ *
+ * This works as both the graph and the shuffle are partitioned and sorted the same way (by page id, with the
+ * same number of reducers), which the first job sets up, so the output of every iteration is the graph to
+ * merge in the next one. The output is of the same format as {@link PageRankMapReduce}.
+ */
+public class PageRankSchimmy {
+    private final String linkInputPath;
+    private final String pageRankOutputPath;
+    private final double dampingFactor;
+    private final double convergence;
+    private final int numOfReducers;
+
+    /**
+     * Construct a Schimmy PageRank MapReducer, with given settings.
+     * @param dampingFactor      The damping factor use in PageRank calculation.
+     * @param convergence        The convergence limit (epsilon).
+     * @param numOfReducers      The number of reducers, and so of graph partitions.
+     * @param linkInputPath      The HDFS path to the SQLExporter's link.json, or link.bin (the binary link graph).
+     * @param pageRankOutputPath The HDFS path to the output.
+     */
+    public PageRankSchimmy(double dampingFactor, double convergence, int numOfReducers,
+                           String linkInputPath, String pageRankOutputPath) {
+        this.dampingFactor = dampingFactor;
+        this.convergence = convergence;
+        this.numOfReducers = numOfReducers;
+        this.linkInputPath = linkInputPath;
+        this.pageRankOutputPath = pageRankOutputPath;
+    }
+
+    private void runPartitionJob(Configuration jobConf, Path inputPath, Path outputPath,
+                                 Class<? extends InputFormat<?, ?>> inputFormatClass) throws Exception {
+        Job job = Job.getInstance(jobConf, "PageRank-Partition");
+        job.setJarByClass(PageRankSchimmy.class);
+
+        job.setMapperClass(SchimmyPartitionMapper.class);
+        job.setReducerClass(SchimmyPartitionReducer.class);
+        job.setNumReduceTasks(numOfReducers);
+        // Must be the same partitioner as the PageRank jobs, so that SchimmyReducer finds its pages in its partition.
+        job.setPartitionerClass(HashPartitioner.class);
+
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(Text.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        job.setInputFormatClass(inputFormatClass);
+
+        FileInputFormat.addInputPath(job, inputPath);
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        if (!job.waitForCompletion(true)) {
+            throw new Exception("Job PageRank-Partition failed.");
+        }
+    }
+
+    private double runPageRankJob(Configuration jobConf, int iteration, Path graphPath, Path outputPath) throws Exception {
+        Job job = Job.getInstance(jobConf, "PageRank-Iteration-" + iteration);
+        job.setJarByClass(PageRankSchimmy.class);
+        job.getConfiguration().set("edu.ucr.cs242.mixer.pagerank.PageRankSchimmy.graphPath", graphPath.toString());
+
+        job.setMapperClass(SchimmyMapper.class);
+        job.setCombinerClass(SchimmyCombiner.class);
+        job.setReducerClass(SchimmyReducer.class);
+        job.setNumReduceTasks(numOfReducers);
+        // Must be the same partitioner as the partition job, so the pages of a reducer are in its graph partition.
+        job.setPartitionerClass(HashPartitioner.class);
+
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(DoubleWritable.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        job.setInputFormatClass(KeyValueTextInputFormat.class);
+
+        FileInputFormat.addInputPath(job, graphPath);
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        if (!job.waitForCompletion(true)) {
+            throw new Exception("Job PageRank-Iteration-" + iteration + " failed.");
+        }
+
+        double residual = job.getCounters().findCounter(SchimmyReducer.Counter.CONVERGENCE).getValue() /
+                PageRankMapReduce.COUNTER_SCALE_FACTOR;
+        double danglingMass = job.getCounters().findCounter(SchimmyReducer.Counter.DANGLING).getValue() /
+                PageRankMapReduce.COUNTER_SCALE_FACTOR;
+        // Spread over all pages in the next iteration.
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", danglingMass);
+
+        System.out.println("Iteration: " + iteration + ", residual (L1) = " + residual +
+                ", dangling mass = " + danglingMass + ".");
+        return residual;
+    }
+
+    public void start() throws Exception {
+        Configuration jobConf = new Configuration();
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.dampingFactor", dampingFactor);
+
+        Path outputPath = new Path(pageRankOutputPath);
+        outputPath.getFileSystem(jobConf).delete(outputPath, true);
+        outputPath.getFileSystem(jobConf).mkdirs(outputPath);
+
+        Path inputPath;
+        long[] numOfDocs;
+        Class<? extends InputFormat<?, ?>> inputFormatClass;
+        if (linkInputPath.endsWith(".bin")) {
+            inputPath = new Path(linkInputPath);
+            numOfDocs = LinkGraphInputFormat.countNodes(inputPath.getFileSystem(jobConf), inputPath);
+            inputFormatClass = LinkGraphInputFormat.class;
+            System.out.println("There are totally " + numOfDocs[0] + " documents, " +
+                    numOfDocs[1] + " of which have no outlinks.");
+        } else {
+            inputPath = new Path(pageRankOutputPath, "link-input");
+            numOfDocs = PageRankMapReduce.processInputFile(jobConf, new Path(linkInputPath), inputPath);
+            inputFormatClass = KeyValueTextInputFormat.class;
+        }
+        jobConf.setLong("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.numberOfDocument", numOfDocs[0]);
+        // All pages start with the same rank.
+        jobConf.setDouble("edu.ucr.cs242.mixer.pagerank.PageRankMapReduce.danglingMass", (double) numOfDocs[1] / numOfDocs[0]);
+
+        Path graphPath = new Path(outputPath, "iteration-0");
+        System.out.println("Partitioning the link graph into " + numOfReducers + " part(s), output to " +
+                graphPath.toString() + ".");
+        runPartitionJob(jobConf, inputPath, graphPath, inputFormatClass);
+
+        for (int iter = 1; ; iter++) {
+            Path jobOutputPath = new Path(outputPath, "iteration-" + iter);
+
+            System.out.println("Iteration: " + iter +", output to " + jobOutputPath.toString() + ".");
+            if (runPageRankJob(jobConf, iter, graphPath, jobOutputPath) < convergence) {
+                System.out.println("Converged! PageRank has been computed.");
+                break;
+            }
+
+            graphPath = jobOutputPath;
+        }
+    }
+}
@@ -3,12 +3,11 @@ package edu.ucr.cs242.webapi;
 import edu.ucr.cs242.Utility;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.highlight.*;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -17,16 +16,34 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class LuceneSearcher extends Searcher {
-    private final Path indexPath;
+    private final Directory directory;
+    // Hands out a shared IndexSearcher, which is swapped when the index on disk changes.
+    private final SearcherManager searcherManager;
 
     /**
      * Construct a Lucene searcher with given settings.
-     * @param jdbcUrl   The JDBC url to the database.
-     * @param indexPath The path to Lucene index.
+     * @param jdbcUrl          The JDBC url to the database.
+     * @param numOfConnections The number of database connections to keep open.
+     * @param indexPath        The path to Lucene index.
      */
-    public LuceneSearcher(String jdbcUrl, Path indexPath) throws SQLException {
-        super(jdbcUrl);
-        this.indexPath = indexPath;
+    public LuceneSearcher(String jdbcUrl, int numOfConnections, Path indexPath) throws SQLException, IOException {
+        super(jdbcUrl, numOfConnections);
+        this.directory = new MMapDirectory(indexPath);
+        this.searcherManager = new SearcherManager(directory, null);
+    }
+
+    /**
+     * Reopen the index if it has been changed on disk. In-flight searches keep using the old one.
+     * @return Whether the index has been reopened.
+     */
+    @Override
+    public boolean refresh() throws IOException {
+        if (searcherManager.isSearcherCurrent()) {
+            return false;
+        }
+
+        searcherManager.maybeRefreshBlocking();
+        return true;
     }
 
     // In PhraseQuery, order matters.
@@ -64,10 +81,9 @@ public class LuceneSearcher extends Searcher {
 
     @Override
     protected SearchResult searchInternal(String keyword, String category) {
+        IndexSearcher searcher = null;
         try {
-            Directory directory = FSDirectory.open(indexPath);
-            DirectoryReader reader = DirectoryReader.open(directory);
-            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher = searcherManager.acquire();
             BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
 
             Query titleQuery = new BooleanQuery.Builder()
@@ -108,8 +124,10 @@ public class LuceneSearcher extends Searcher {
 
             List<RelatedPage> pages = new ArrayList<>();
             if (hits > 0) {
+                // Lambda requires an effectively final variable.
+                IndexSearcher topDocsSearcher = searcher;
                 Map<String, String> titleScoreMap = Arrays.stream(topDocs.scoreDocs).map(sd -> {
-                    try { return new AbstractMap.SimpleEntry<>(searcher.doc(sd.doc), sd.score); }
+                    try { return new AbstractMap.SimpleEntry<>(topDocsSearcher.doc(sd.doc), sd.score); }
                     catch (IOException e) { return null; }
                 }).filter(Objects::nonNull).collect(
                         // Supplier, LinkedHashMap keep the insertion order.
@@ -123,13 +141,23 @@ public class LuceneSearcher extends Searcher {
                 pages = fetchRelatedPages(titleScoreMap, keyword, category, LuceneSearcher::fragmentHighlight);
             }
 
-            reader.close();
-            directory.close();
             return new SearchResult(hits, pages);
         } catch (Exception e) {
             System.out.println("LuceneSearcher throws an Exception.");
             e.printStackTrace();
             return null;
+        } finally {
+            if (searcher != null) {
+                try { searcherManager.release(searcher); }
+                catch (IOException e) { e.printStackTrace(); }
+            }
         }
     }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        searcherManager.close();
+        directory.close();
+        super.close();
+    }
 }
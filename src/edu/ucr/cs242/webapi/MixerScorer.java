@@ -0,0 +1,497 @@
+package edu.ucr.cs242.webapi;
+
+import edu.ucr.cs242.mixer.index.BM25;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
+import edu.ucr.cs242.mixer.index.PhraseMatcher;
+import edu.ucr.cs242.mixer.index.PostingList;
+
+import java.util.Arrays;
+
+/**
+ * Score documents for Mixer document-at-a-time: the posting lists of all query terms are walked together
+ * in docId order, and the BM25 sums, boosts and proximity of each document are computed in primitive
+ * variables before moving on to the next document.
+ *
+ * When the top results are collected and the term score bounds are imported, documents which cannot
+ * enter the top results are skipped with WAND: a document is only scored if the score upper bounds of
+ * the terms it may contain sum above the lowest score in the top results.
+ */
+public class MixerScorer {
+    /**
+     * The boosts applied to the BM25 sum of a field, by how the query terms occur in it.
+     */
+    public static class FieldBoost {
+        private final int fieldId;
+        private final double exactMatchBoost;
+        private final double orderMatchBoost;
+        private final double allOccurBoost;
+        private final double partialMatchBoost;
+        private final double togetherBoost;
+
+        /**
+         * @param fieldId           The field to score.
+         * @param exactMatchBoost   All terms occur in query order, and nothing else is in the field.
+         * @param orderMatchBoost   All terms occur in query order.
+         * @param allOccurBoost     All terms occur, but not in query order.
+         * @param partialMatchBoost Only some terms occur.
+         * @param togetherBoost     The weight of this field in the final score.
+         */
+        public FieldBoost(int fieldId, double exactMatchBoost, double orderMatchBoost, double allOccurBoost,
+                          double partialMatchBoost, double togetherBoost) {
+            this.fieldId = fieldId;
+            this.exactMatchBoost = exactMatchBoost;
+            this.orderMatchBoost = orderMatchBoost;
+            this.allOccurBoost = allOccurBoost;
+            this.partialMatchBoost = partialMatchBoost;
+            this.togetherBoost = togetherBoost;
+        }
+
+        // The max boost applied to a field score, if all terms occur or only some do.
+        private double maxBoost(boolean allOccur) {
+            return (allOccur ? Math.max(Math.max(exactMatchBoost, orderMatchBoost), allOccurBoost) : partialMatchBoost) *
+                    togetherBoost;
+        }
+    }
+
+    /**
+     * A group of query terms (e.g. the keyword, or the category). A document only matches if every field
+     * of every group contains at least one of the group's terms.
+     */
+    public static class TermGroup {
+        // [distinct term]
+        private final PostingList[] postings;
+        // [distinct term][fieldId], the max BM25 part 2 of the term, null if unknown
+        private final double[][] termFreqBounds;
+        private final int[] queryFreq;
+        // [query term] -> distinct term
+        private final int[] querySequence;
+        private final FieldBoost[] fieldBoosts;
+
+        /**
+         * @param postings       The posting list of each distinct term, null if the term is not indexed.
+         * @param termFreqBounds The max BM25 part 2 of each distinct term in each field, null if not imported.
+         * @param queryFreq      The number of occurrences of each distinct term in the query.
+         * @param querySequence  The distinct term index of each query term, in query order.
+         * @param fieldBoosts    The fields to score, with their boosts.
+         */
+        public TermGroup(PostingList[] postings, double[][] termFreqBounds, int[] queryFreq, int[] querySequence,
+                         FieldBoost... fieldBoosts) {
+            this.postings = postings;
+            this.termFreqBounds = termFreqBounds;
+            this.queryFreq = queryFreq;
+            this.querySequence = querySequence;
+            this.fieldBoosts = fieldBoosts;
+        }
+
+        public PostingList[] getPostings() {
+            return postings;
+        }
+    }
+
+    /**
+     * The matched documents in docId order, with their scores.
+     */
+    public static class ScoredDocs {
+        private int size = 0;
+        private int[] docIds = new int[256];
+        private double[] scores = new double[256];
+
+        public int size() {
+            return size;
+        }
+
+        public int getDocId(int index) {
+            return docIds[index];
+        }
+
+        public double getScore(int index) {
+            return scores[index];
+        }
+
+        public void add(int docId, double score) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+
+            docIds[size] = docId;
+            scores[size++] = score;
+        }
+    }
+
+    private final double numberOfDocs;
+    private final double[] avgDocLength;
+    private final DocumentStatistics documentStatistics;
+    private final int phraseSlop;
+
+    /**
+     * Construct a Mixer scorer with given collection statistics.
+     * @param numberOfDocs       The number of documents in the collection.
+     * @param avgDocLength       The average document length of each field.
+     * @param documentStatistics The per-document lengths.
+     * @param phraseSlop         The max number of other words in between the query terms for an order match.
+     */
+    public MixerScorer(double numberOfDocs, double[] avgDocLength, DocumentStatistics documentStatistics,
+                       int phraseSlop) {
+        this.numberOfDocs = numberOfDocs;
+        this.avgDocLength = avgDocLength;
+        this.documentStatistics = documentStatistics;
+        this.phraseSlop = phraseSlop;
+    }
+
+    /**
+     * The cursors of one query over the posting lists of all its term groups.
+     */
+    private class Evaluation {
+        private final TermGroup[] groups;
+        // Cursors of all groups' distinct terms are laid out one group after another.
+        private final int[] cursorBase;
+        private final int numOfCursors;
+        private final PostingList[] postings;
+        // [group][fieldBoost][distinct term], BM25 part 1
+        private final double[][][] idf;
+        // [group][distinct term], BM25 part 3
+        private final double[][] qfWeight;
+
+        // Index of the current posting of each cursor, or the list size when exhausted.
+        private final int[] cursor;
+        // The docId of the current posting of each cursor, Integer.MAX_VALUE when exhausted.
+        private final int[] cursorDocId;
+        // Index of the current posting of each cursor if it is on the scored document, -1 otherwise.
+        private final int[] current;
+
+        // [query term], reused by the phrase match of every document
+        private final int[][] phrasePositions;
+        private final int[] phraseStart;
+        private final int[] phraseEnd;
+
+        // [group][fieldBoost][distinct term], the max unboosted BM25 of the term in the field
+        private double[][][] termBound;
+        // [cursor], the max score a document may get from the term of the cursor
+        private double[] cursorBound;
+
+        private Evaluation(TermGroup[] groups) {
+            this.groups = groups;
+
+            int numOfCursors = 0;
+            cursorBase = new int[groups.length];
+            for (int g = 0; g < groups.length; g++) {
+                cursorBase[g] = numOfCursors;
+                numOfCursors += groups[g].postings.length;
+            }
+            this.numOfCursors = numOfCursors;
+
+            postings = new PostingList[numOfCursors];
+            idf = new double[groups.length][][];
+            qfWeight = new double[groups.length][];
+            for (int g = 0; g < groups.length; g++) {
+                TermGroup group = groups[g];
+                System.arraycopy(group.postings, 0, postings, cursorBase[g], group.postings.length);
+
+                idf[g] = new double[group.fieldBoosts.length][group.postings.length];
+                qfWeight[g] = new double[group.postings.length];
+                for (int t = 0; t < group.postings.length; t++) {
+                    if (group.postings[t] != null) {
+                        qfWeight[g][t] = BM25.queryFreqWeight(group.queryFreq[t]);
+                        for (int f = 0; f < group.fieldBoosts.length; f++) {
+                            idf[g][f][t] = BM25.inverseDocFreq(numberOfDocs,
+                                    group.postings[t].getDocFrequency(group.fieldBoosts[f].fieldId));
+                        }
+                    }
+                }
+            }
+
+            cursor = new int[numOfCursors];
+            cursorDocId = new int[numOfCursors];
+            current = new int[numOfCursors];
+
+            int maxQueryLength = Arrays.stream(groups).mapToInt(g -> g.querySequence.length).max().orElse(0);
+            phrasePositions = new int[maxQueryLength][];
+            phraseStart = new int[maxQueryLength];
+            phraseEnd = new int[maxQueryLength];
+            for (int c = 0; c < numOfCursors; c++) {
+                moveTo(c, 0);
+            }
+        }
+
+        private void moveTo(int c, int index) {
+            cursor[c] = index;
+            cursorDocId[c] = postings[c] != null && index < postings[c].size() ?
+                    postings[c].getDocId(index) : Integer.MAX_VALUE;
+        }
+
+        // Move the cursor to the first posting whose docId is not less than the target. The blocks in between are
+        // skipped without being decoded.
+        private void advance(int c, int target) {
+            moveTo(c, postings[c].advance(cursor[c], target));
+        }
+
+        // Compute the score upper bound of each term in each field, and that of each cursor.
+        // Return false if some term has no imported bounds.
+        private boolean computeUpperBounds() {
+            termBound = new double[groups.length][][];
+            cursorBound = new double[numOfCursors];
+
+            for (int g = 0; g < groups.length; g++) {
+                TermGroup group = groups[g];
+                termBound[g] = new double[group.fieldBoosts.length][group.postings.length];
+
+                for (int t = 0; t < group.postings.length; t++) {
+                    if (group.postings[t] == null) {
+                        continue;
+                    }
+                    if (group.termFreqBounds == null || group.termFreqBounds[t] == null) {
+                        return false;
+                    }
+
+                    for (int f = 0; f < group.fieldBoosts.length; f++) {
+                        FieldBoost fieldBoost = group.fieldBoosts[f];
+                        double termFreqBound = group.termFreqBounds[t][fieldBoost.fieldId];
+
+                        // A term absent in a field adds nothing to its score, so the bound is at least 0.
+                        // Leave some room for rounding, as the actual score is summed in another order.
+                        double bound = Math.max(0, idf[g][f][t] + termFreqBound + qfWeight[g][t]);
+                        termBound[g][f][t] = termFreqBound == Double.NEGATIVE_INFINITY ? 0 : bound * (1 + 1e-9) + 1e-9;
+                        cursorBound[cursorBase[g] + t] += termBound[g][f][t] *
+                                Math.max(fieldBoost.maxBoost(true), fieldBoost.maxBoost(false));
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        // The score upper bound of the document the cursors are positioned on, from the terms it actually has.
+        // Return NaN if the document does not match.
+        private double documentUpperBound() {
+            double totalBound = 0;
+            for (int g = 0; g < groups.length; g++) {
+                TermGroup group = groups[g];
+
+                for (int f = 0; f < group.fieldBoosts.length; f++) {
+                    FieldBoost fieldBoost = group.fieldBoosts[f];
+                    int fieldId = fieldBoost.fieldId;
+
+                    double sumBound = 0;
+                    int occurCount = 0;
+                    for (int t = 0; t < group.postings.length; t++) {
+                        int index = current[cursorBase[g] + t];
+                        if (index >= 0 && group.postings[t].getFrequency(index, fieldId) > 0) {
+                            sumBound += termBound[g][f][t];
+                            ++occurCount;
+                        }
+                    }
+
+                    if (occurCount == 0) {
+                        // The document must occur in every field.
+                        return Double.NaN;
+                    }
+
+                    totalBound += sumBound * fieldBoost.maxBoost(occurCount == group.postings.length);
+                }
+            }
+
+            return totalBound;
+        }
+
+        private double fieldBoost(FieldBoost fieldBoost, TermGroup group, int cursorBase, int docId) {
+            int fieldId = fieldBoost.fieldId;
+            int[] sequence = group.querySequence;
+
+            // The whole query as a phrase for order match
+            for (int i = 0; i < sequence.length; i++) {
+                PostingList postings = group.postings[sequence[i]];
+                int index = current[cursorBase + sequence[i]];
+                phraseStart[i] = postings.getPositionStart(index, fieldId);
+                phraseEnd[i] = postings.getPositionEnd(index, fieldId);
+                phrasePositions[i] = postings.getPositions();
+            }
+
+            if (!PhraseMatcher.matches(phrasePositions, phraseStart, phraseEnd, sequence.length, phraseSlop)) {
+                return fieldBoost.allOccurBoost;
+            }
+
+            // Exact match?
+            return documentStatistics.getDocLength(docId, fieldId) == sequence.length ?
+                    fieldBoost.exactMatchBoost : fieldBoost.orderMatchBoost;
+        }
+
+        // Position the cursors whose current docId is the given one on it.
+        private void positionOn(int docId) {
+            for (int c = 0; c < numOfCursors; c++) {
+                current[c] = cursorDocId[c] == docId ? cursor[c] : -1;
+            }
+        }
+
+        // Move the cursors positioned on a document past it.
+        private void advancePositioned() {
+            for (int c = 0; c < numOfCursors; c++) {
+                if (current[c] >= 0) {
+                    moveTo(c, cursor[c] + 1);
+                }
+            }
+        }
+
+        // Score the document the cursors are positioned on. Return NaN if the document does not match.
+        private double score(int docId) {
+            double totalScore = 0;
+            for (int g = 0; g < groups.length && !Double.isNaN(totalScore); g++) {
+                TermGroup group = groups[g];
+
+                for (int f = 0; f < group.fieldBoosts.length; f++) {
+                    FieldBoost fieldBoost = group.fieldBoosts[f];
+                    int fieldId = fieldBoost.fieldId;
+
+                    double sumScore = 0;
+                    int occurCount = 0;
+                    for (int t = 0; t < group.postings.length; t++) {
+                        int index = current[cursorBase[g] + t];
+                        int termFreq = index < 0 ? 0 : group.postings[t].getFrequency(index, fieldId);
+
+                        // log(0) of an absent term is not a valid score.
+                        if (termFreq > 0) {
+                            double bm25 = idf[g][f][t] +
+                                    BM25.termFreqWeight(termFreq, documentStatistics.getDocLength(docId, fieldId), avgDocLength[fieldId]) +
+                                    qfWeight[g][t];
+                            if (!Double.isInfinite(bm25)) {
+                                sumScore += bm25;
+                                ++occurCount;
+                            }
+                        }
+                    }
+
+                    if (occurCount == 0) {
+                        // The document must occur in every field.
+                        totalScore = Double.NaN;
+                        break;
+                    }
+
+                    // All terms occurred in the document?
+                    if (occurCount == group.postings.length) {
+                        sumScore *= fieldBoost(fieldBoost, group, cursorBase[g], docId);
+                    } else {
+                        sumScore *= fieldBoost.partialMatchBoost;
+                    }
+
+                    totalScore += sumScore * fieldBoost.togetherBoost;
+                }
+            }
+
+            return totalScore;
+        }
+
+        // The smallest current docId of all cursors, Integer.MAX_VALUE if all are exhausted.
+        private int nextDocId() {
+            int docId = Integer.MAX_VALUE;
+            for (int c = 0; c < numOfCursors; c++) {
+                docId = Math.min(docId, cursorDocId[c]);
+            }
+            return docId;
+        }
+    }
+
+    /**
+     * Score all documents matching the given term groups.
+     * @param groups The term groups of the query.
+     * @return The matched documents with their scores.
+     */
+    public ScoredDocs score(TermGroup... groups) {
+        Evaluation evaluation = new Evaluation(groups);
+        ScoredDocs scoredDocs = new ScoredDocs();
+
+        for (int docId = evaluation.nextDocId(); docId != Integer.MAX_VALUE; docId = evaluation.nextDocId()) {
+            evaluation.positionOn(docId);
+            double score = evaluation.score(docId);
+            if (!Double.isNaN(score)) {
+                scoredDocs.add(docId, score);
+            }
+            evaluation.advancePositioned();
+        }
+
+        return scoredDocs;
+    }
+
+    /**
+     * Collect the top documents matching the given term groups, skipping those which cannot enter the top results
+     * when the term score bounds are available. The total hits of the collector is then a lower bound.
+     * @param collector The collector of the top documents.
+     * @param groups    The term groups of the query.
+     * @return Whether the total hits of the collector is exact, i.e. no document was skipped.
+     */
+    public boolean score(TopKCollector collector, TermGroup... groups) {
+        Evaluation evaluation = new Evaluation(groups);
+
+        if (!evaluation.computeUpperBounds()) {
+            for (int docId = evaluation.nextDocId(); docId != Integer.MAX_VALUE; docId = evaluation.nextDocId()) {
+                evaluation.positionOn(docId);
+                double score = evaluation.score(docId);
+                if (!Double.isNaN(score)) {
+                    collector.collect(docId, score);
+                }
+                evaluation.advancePositioned();
+            }
+            return true;
+        }
+        double[] bounds = evaluation.cursorBound;
+        boolean exact = true;
+
+        int[] docId = evaluation.cursorDocId;
+        // The live cursors, sorted by their current docId.
+        int[] order = new int[evaluation.numOfCursors];
+        while (true) {
+            int numOfLive = 0;
+            for (int c = 0; c < evaluation.numOfCursors; c++) {
+                if (docId[c] != Integer.MAX_VALUE) {
+                    // Insertion sort, as there are only a few query terms.
+                    int i = numOfLive++;
+                    for (; i > 0 && docId[order[i - 1]] > docId[c]; i--) {
+                        order[i] = order[i - 1];
+                    }
+                    order[i] = c;
+                }
+            }
+
+            // Find the pivot, the first cursor where the bounds of all cursors before it exceed the threshold.
+            // Equal scores rank lower docIds first, so a document with a bound equal to the threshold is out.
+            double threshold = collector.getMinCompetitiveScore();
+            double boundSum = 0;
+            int pivot = -1;
+            for (int i = 0; i < numOfLive; i++) {
+                boundSum += bounds[order[i]];
+                if (boundSum > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                // The documents left cannot enter the top results.
+                exact &= numOfLive == 0;
+                break;
+            }
+
+            int pivotDocId = docId[order[pivot]];
+            if (docId[order[0]] == pivotDocId) {
+                evaluation.positionOn(pivotDocId);
+                // Only score the document if the terms it actually has may bring it into the top results.
+                double bound = evaluation.documentUpperBound();
+                if (!Double.isNaN(bound) && bound > threshold) {
+                    double score = evaluation.score(pivotDocId);
+                    if (!Double.isNaN(score)) {
+                        collector.collect(pivotDocId, score);
+                    }
+                } else if (!Double.isNaN(bound)) {
+                    exact = false;
+                }
+                evaluation.advancePositioned();
+            } else {
+                // Documents before the pivot only contain terms whose bounds sum up to the threshold at most.
+                exact = false;
+                for (int i = 0; i < pivot && docId[order[i]] < pivotDocId; i++) {
+                    evaluation.advance(order[i], pivotDocId);
+                }
+            }
+        }
+
+        return exact;
+    }
+}
@@ -1,30 +1,33 @@
 package edu.ucr.cs242.webapi;
 
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
+import edu.ucr.cs242.mixer.index.PostingList;
+import edu.ucr.cs242.mixer.index.Tokenizer;
+import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBException;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
-import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.englishStemmer;
 
 import java.sql.SQLException;
 import java.util.*;
-import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class MixerSearcher extends Searcher {
-    private static final double k1 = 1.2;
-    private static final double k2 = 100.0;
-    private static final double b = 0.75;
+    /**
+     * The number of top results returned.
+     */
+    private static final int MAX_RESULTS = 1000;
 
     private final DB levelDB;
+    private final DocumentStatistics documentStatistics;
     private final boolean withPageRank;
-    private final SnowballStemmer stemmer = new englishStemmer();
+    private final MixerScorer scorer;
+    // Searchers are shared across requests, while the tokenizer is stateful.
+    private final ThreadLocal<Tokenizer> tokenizer = ThreadLocal.withInitial(Tokenizer::new);
 
     // Only 3 field, 0 - title, 1 - content, 2 - categories
     private final double[] avgDocLength = new double[3];
@@ -32,14 +35,19 @@ public class MixerSearcher extends Searcher {
     private final double maxPageRank;
 
     /**
-     * Construct a Lucene searcher with given settings.
-     * @param jdbcUrl      The JDBC url to the database.
-     * @param levelDB      The LevelDB object.
-     * @param withPageRank Whether take PageRank into account.
+     * Construct a Mixer searcher with given settings.
+     * @param jdbcUrl            The JDBC url to the database.
+     * @param numOfConnections   The number of database connections to keep open.
+     * @param levelDB            The LevelDB object, owned by the caller.
+     * @param documentStatistics The per-document lengths and PageRank.
+     * @param withPageRank       Whether take PageRank into account.
+     * @param phraseSlop         The max number of other words in between the query terms for an order match.
      */
-    public MixerSearcher(String jdbcUrl, DB levelDB, boolean withPageRank) throws SQLException {
-        super(jdbcUrl);
+    public MixerSearcher(String jdbcUrl, int numOfConnections, DB levelDB, DocumentStatistics documentStatistics,
+                         boolean withPageRank, int phraseSlop) throws SQLException {
+        super(jdbcUrl, numOfConnections);
         this.levelDB = levelDB;
+        this.documentStatistics = documentStatistics;
         this.withPageRank = withPageRank;
 
         numberOfDocs = Double.parseDouble(Utility.levelDBGet(levelDB, "__docCount"));
@@ -47,213 +55,69 @@ public class MixerSearcher extends Searcher {
         for (int i = 0; i < avgDocLength.length; i++) {
             avgDocLength[i] = Double.parseDouble(Utility.levelDBGet(levelDB, "__avgDocLength_" + i));
         }
+        scorer = new MixerScorer(numberOfDocs, avgDocLength, documentStatistics, phraseSlop);
     }
 
+    // The same terms as indexed.
     private List<String> getQueryTerms(String query) {
-        return Utility.splitKeyword(query).stream()
-                .filter(s -> !Utility.isStopWord(s))
-                .map(s -> {
-                    stemmer.setCurrent(s);
-                    stemmer.stem();
-                    return stemmer.getCurrent();
-                }).collect(Collectors.toList());
-    }
-
-    // <Term, QueryFreq>
-    private Map<String, Integer> getQueryFrequency(List<String> terms) {
-        return terms.stream().distinct()
-                .collect(Collectors.toMap(Function.identity(), t -> Collections.frequency(terms, t)));
+        return tokenizer.get().tokenize(query);
     }
 
-    // <Term, <DocId, InvertedIndex>>
-    private Map<String, Map<Integer, MixerInvertedIndex>> fetchInvertedIndex(Set<String> terms) {
-        return terms.stream().map(t -> {
-            try {
-                String value = Utility.levelDBGet(levelDB, t);
-                if (value != null) {
-                    Map<Integer, MixerInvertedIndex> indexMap = new HashMap<>();
-
-                    for (Object el : new JSONArray(value)) {
-                        JSONObject json = (JSONObject) el;
-
-                        int docId = Integer.parseInt(json.keys().next());
-                        JSONObject index = json.getJSONObject(String.valueOf(docId));
-                        JSONArray posArray = index.getJSONArray("position");
-
-                        List<Integer> freq = new ArrayList<>();
-                        List<List<Integer>> pos = new ArrayList<>();
+    // Build the term group of a query, with the posting list and score bounds of each distinct term.
+    private MixerScorer.TermGroup buildTermGroup(List<String> queryTerms, MixerScorer.FieldBoost... fieldBoosts) {
+        List<String> distinctTerms = queryTerms.stream().distinct().collect(Collectors.toList());
 
-                        int fieldId = 0;
-                        for (Object f : index.getJSONArray("frequency")) {
-                            Integer fi = (Integer) f;
-                            freq.add(fi);
+        int[] queryFreq = distinctTerms.stream().mapToInt(t -> Collections.frequency(queryTerms, t)).toArray();
+        int[] querySequence = queryTerms.stream().mapToInt(distinctTerms::indexOf).toArray();
+        PostingList[] postings = distinctTerms.stream().map(this::fetchPostingList).toArray(PostingList[]::new);
+        double[][] termFreqBounds = distinctTerms.stream().map(this::fetchTermFreqBound).toArray(double[][]::new);
 
-                            List<Integer> posList = new ArrayList<>();
-                            for (Object p : posArray.getJSONArray(fieldId)) {
-                                posList.add((Integer) p);
-                            }
-                            pos.add(posList);
-
-                            ++fieldId;
-                        }
-
-                        indexMap.put(docId, new MixerInvertedIndex(docId, freq, pos));
-                    }
-
-                    return new AbstractMap.SimpleEntry<>(t, indexMap);
-                }
-
-                return null;
-            } catch (JSONException e) {
-                return null;
-            } catch (DBException e) {
-                System.err.println("MixerSearcher::searchInternal throws a DBException.");
-                e.printStackTrace();
-                return null;
-            }
-        }).filter(Objects::nonNull).collect(
-                Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)
-        );
+        return new MixerScorer.TermGroup(postings, termFreqBounds, queryFreq, querySequence, fieldBoosts);
     }
 
-    // Calculate BM25 for a single term
-    private double BM25(double termFreq, double queryFreq, double docFreq, double docLength, double avgDocLength) {
-        double K = k1 * ((1 - b) + b * docLength / avgDocLength);
-        double part1 = Math.log((numberOfDocs - docFreq + 0.5) / (docFreq + 0.5));
-        double part2 = Math.log((k1 + 1) * termFreq / (K + termFreq));
-        double part3 = Math.log((k2 + 1) * queryFreq / (k2 + queryFreq));
-        return part1 + part2 + part3;
+    // The max BM25 part 2 of the term in each field, or null if not imported.
+    private double[] fetchTermFreqBound(String term) {
+        String value = Utility.levelDBGet(levelDB, "__termBound_" + term);
+        return value != null ? Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray() : null;
     }
 
-    // <docId, score>
-    private Map<Integer, Double> scoreTerm(int fieldId, double queryFreq, Map<Integer, MixerInvertedIndex> termIndex) {
-        Map<Integer, Double> score = new HashMap<>();
-
-        long docFreq = termIndex.values().stream()
-                .filter(index -> index.getFrequency().get(fieldId) > 0).count();
-
-        termIndex.forEach((docId, index) -> {
-            int docLength = Integer.parseInt(Utility.levelDBGet(levelDB, "__docLength_" + docId + "_" + fieldId));
-
-            double bm25 = BM25(index.getFrequency().get(fieldId), queryFreq, docFreq, docLength, avgDocLength[fieldId]);
-            // Filter out invalid result.
-            if (bm25 != Double.POSITIVE_INFINITY && bm25 != Double.NEGATIVE_INFINITY && bm25 != Double.NaN) {
-                score.put(docId, bm25);
-            }
-        });
-
-        return score;
-    }
-
-    // <docId, <keyword, score>>
-    private Map<Integer, Map<String, Double>> scoreTerms(int fieldId, Map<String, Integer> queryFreq,
-                                                         Map<String, Map<Integer, MixerInvertedIndex>> invertedIndex) {
-        Map<Integer, Map<String, Double>> retMap = new HashMap<>();
-
-        for (Map.Entry<String, Map<Integer, MixerInvertedIndex>> entry : invertedIndex.entrySet()) {
-            String term = entry.getKey();
-            scoreTerm(fieldId, queryFreq.get(term), entry.getValue()).forEach((docId, score) -> {
-                if (!retMap.containsKey(docId)) {
-                    retMap.put(docId, new HashMap<>());
-                }
-
-                retMap.get(docId).put(term, score);
-            });
+    // The posting list of the term, or null if the term is not indexed.
+    private PostingList fetchPostingList(String term) {
+        try {
+            byte[] value = levelDB.get(JniDBFactory.bytes(term));
+            return value != null ? PostingList.decode(value) : null;
+        } catch (JSONException e) {
+            return null;
+        } catch (DBException e) {
+            System.err.println("MixerSearcher::searchInternal throws a DBException.");
+            e.printStackTrace();
+            return null;
         }
-
-        return retMap;
     }
 
-    // <DocId, Score>
-    private Map<Integer, Double> calculateFieldScore(int fieldId,
-                                                     Map<Integer, Map<String, Double>> termScore,
-                                                     Map<String, Map<Integer, MixerInvertedIndex>> invertedIndex,
-                                                     List<String> queryTerms,
-                                                     Map<String, Integer> queryFrequency,
-                                                     double exactMatchBoost, double orderMatchBoost, double allOccurBoost,
-                                                     double partialMatchBoost, double togetherBoost) {
-        Map<Integer, Double> finalScore = new HashMap<>();
-
-        termScore.forEach((docId, entry) -> {
-            double sumScore = entry.values().stream().collect(Collectors.summarizingDouble(v -> v)).getSum();
-
-            // All terms occurred in the document?
-            if (entry.size() == queryFrequency.size()) {
-                // Bi-gram for order match
-                int orderMatchCount = 0;
-                for (int i = 0; i < queryTerms.size() - 1; i++) {
-                    String prevTerm = queryTerms.get(i), nextTerm = queryTerms.get(i + 1);
-
-                    List<Integer> prevPos = invertedIndex.get(prevTerm).get(docId).getPosition().get(fieldId);
-                    List<Integer> nextPos = invertedIndex.get(nextTerm).get(docId).getPosition().get(fieldId);
-
-                    if (prevPos.stream().map(pos -> pos + 1).anyMatch(nextPos::contains)) {
-                        ++orderMatchCount;
-                    }
-                }
-
-                if (orderMatchCount == queryTerms.size() - 1) {
-                    // Exact match?
-                    int docLength = Integer.parseInt(Utility.levelDBGet(levelDB, "__docLength_" + docId + "_" + fieldId));
-                    if (docLength == queryTerms.size()) {
-                        sumScore *= exactMatchBoost;
-                    } else {
-                        sumScore *= orderMatchBoost;
-                    }
-                } else {
-                    sumScore *= allOccurBoost;
-                }
-            } else {
-                sumScore *= partialMatchBoost;
-            }
-
-            finalScore.put(docId, sumScore * togetherBoost);
-        });
-
-        return finalScore;
+    private double combinePageRank(int docId, double bm25Score) {
+        return withPageRank ? bm25Score * 0.9 + normalizedPageRank(docId) * 0.1 : bm25Score;
     }
 
-    // <DocId, Score>
-    private Map<Integer, Double> combineFieldScore(Map<Integer, Double> score1, Map<Integer, Double> score2,
-                                                   boolean docMustOccurInBoth) {
+    private double normalizedPageRank(int docId) {
+        float rawPageRank = documentStatistics.getPageRank(docId);
+        double pageRank = 1.0 / numberOfDocs; // The initial PageRank
 
-        // Efficient concern.
-        Map<Integer, Double> small = score1.size() < score2.size() ? score1 : score2;
-        Map<Integer, Double> big = score1.size() < score2.size() ? score2 : score1;
-
-        Map<Integer, Double> retMap;
-        if (docMustOccurInBoth) {
-            retMap = new HashMap<>();
-            small.forEach((k, v) -> {
-                if (big.containsKey(k)) {
-                    retMap.put(k, v + big.get(k));
-                }
-            });
-        } else {
-            retMap = new HashMap<>(big);
-            small.forEach((k, v) -> retMap.merge(k, v, (a, b) -> a + b));
+        // Does this page has a PageRank value?
+        if (rawPageRank != DocumentStatistics.NO_PAGE_RANK) {
+            pageRank = rawPageRank;
         }
 
-        return retMap;
+        // Normalize PageRank with Max-min normalization
+        return normalize(pageRank, 0.0, maxPageRank, 0.0, 1000.0);
     }
 
-    private Map.Entry<Integer, MixerScore> combinePageRank(Integer docId, Double bm25Score) {
+    private MixerScore buildScore(int docId, double bm25Score) {
         if (!withPageRank) {
-            return new AbstractMap.SimpleEntry<>(docId, new MixerScore(bm25Score, bm25Score, -1));
+            return new MixerScore(bm25Score, bm25Score, -1);
         } else {
-            String rawPageRank = Utility.levelDBGet(levelDB, "__docPR_" + docId);
-            Double pageRank = 1.0 / numberOfDocs; // The initial PageRank
-
-            // Does this page has a PageRank value?
-            if (rawPageRank != null) {
-                pageRank = Double.parseDouble(rawPageRank);
-            }
-
-            // Normalize PageRank with Max-min normalization
-            Double normalizedPR = normalize(pageRank, 0.0, maxPageRank, 0.0, 1000.0);
-            // BM25 * 0.8 + PR * 0.2 is the final score
-            return new AbstractMap.SimpleEntry<>(docId,
-                    new MixerScore(bm25Score * 0.9 + normalizedPR * 0.1, bm25Score, normalizedPR));
+            // BM25 * 0.9 + PR * 0.1 is the final score
+            return new MixerScore(combinePageRank(docId, bm25Score), bm25Score, normalizedPageRank(docId));
         }
     }
 
@@ -302,78 +166,77 @@ public class MixerSearcher extends Searcher {
     @Override
     protected SearchResult searchInternal(String keyword, String category) {
         try {
-            List<String> keywordQueryTerms = getQueryTerms(keyword);
-            Map<String, Integer> keywordQueryFreq = getQueryFrequency(keywordQueryTerms);
-            Map<String, Map<Integer, MixerInvertedIndex>> keywordInvertedIndex = fetchInvertedIndex(keywordQueryFreq.keySet());
+            MixerScorer.TermGroup keywordGroup = buildTermGroup(getQueryTerms(keyword),
+                    // 0 - title
+                    new MixerScorer.FieldBoost(0, 20.0f, 10.0f, 5.0f, 1.0f, 1.0f),
+                    // 1 - content
+                    new MixerScorer.FieldBoost(1, 2.0f, 1.2f, 1.05f, 1.0f, 0.5f));
 
             int hits = 0;
+            boolean hitsLowerBound = false;
             List<RelatedPage> pages = new ArrayList<>();
 
             // Get some keyword hits?
-            if (!keywordInvertedIndex.isEmpty()) {
-                // 0 - title
-                Map<Integer, Map<String, Double>> titleTermScore = scoreTerms(0, keywordQueryFreq, keywordInvertedIndex);
-                // 1 - content
-                Map<Integer, Map<String, Double>> contentTermScore = scoreTerms(1, keywordQueryFreq, keywordInvertedIndex);
-
-                Map<Integer, Double> titleScore = calculateFieldScore(0, titleTermScore,
-                        keywordInvertedIndex, keywordQueryTerms, keywordQueryFreq,
-                        20.0f, 10.0f, 5.0f, 1.0f, 1.0f);
-                Map<Integer, Double> contentScore = calculateFieldScore(1, contentTermScore,
-                        keywordInvertedIndex, keywordQueryTerms, keywordQueryFreq,
-                        2.0f, 1.2f, 1.05f, 1.0f, 0.5f);
-                Map<Integer, Double> finalScore = combineFieldScore(titleScore, contentScore, true);
-
+            if (Arrays.stream(keywordGroup.getPostings()).anyMatch(Objects::nonNull)) {
+                MixerScorer.TermGroup[] groups = { keywordGroup };
                 if (!category.isEmpty()) {
-                    List<String> categoryQueryTerms = getQueryTerms(category);
-                    Map<String, Integer> categoryQueryFreq = getQueryFrequency(categoryQueryTerms);
-                    Map<String, Map<Integer, MixerInvertedIndex>> categoryInvertedIndex = fetchInvertedIndex(categoryQueryFreq.keySet());
+                    groups = new MixerScorer.TermGroup[] { keywordGroup, buildTermGroup(getQueryTerms(category),
+                            // 2 - category
+                            new MixerScorer.FieldBoost(2, 20.0f, 10.0f, 5.0f, 1.0f, 1.0f)) };
+                }
 
-                    // 2 - category
-                    Map<Integer, Map<String, Double>> categoryTermScore = scoreTerms(2, categoryQueryFreq, categoryInvertedIndex);
+                // Only top results, selected by a bounded heap instead of sorting all hits.
+                TopKCollector collector = new TopKCollector(MAX_RESULTS);
+                // [rank] -> docId, BM25 score
+                int[] topDocIds;
+                double[] topBM25Scores;
+
+                if (withPageRank) {
+                    // Normalizing the BM25 score needs all of them, so no document can be skipped.
+                    MixerScorer.ScoredDocs scoredDocs = scorer.score(groups);
+
+                    // Normalization the BM25 score (with Min-max normalization)
+                    double minScore = Double.POSITIVE_INFINITY, maxScore = Double.NEGATIVE_INFINITY;
+                    for (int i = 0; i < scoredDocs.size(); i++) {
+                        minScore = Math.min(minScore, scoredDocs.getScore(i));
+                        maxScore = Math.max(maxScore, scoredDocs.getScore(i));
+                    }
 
-                    Map<Integer, Double> categoryScore = calculateFieldScore(2, categoryTermScore,
-                            categoryInvertedIndex, categoryQueryTerms, categoryQueryFreq,
-                            20.0f, 10.0f, 5.0f, 1.0f, 1.0f);
+                    // The heap holds indices into the scored documents, which are in docId order.
+                    for (int i = 0; i < scoredDocs.size(); i++) {
+                        double bm25Score = normalize(scoredDocs.getScore(i), minScore, maxScore, 0.0, 100.0);
+                        collector.collect(i, combinePageRank(scoredDocs.getDocId(i), bm25Score));
+                    }
 
-                    finalScore = combineFieldScore(finalScore, categoryScore, true);
+                    int[] topIndices = collector.topDocIds();
+                    topDocIds = new int[topIndices.length];
+                    topBM25Scores = new double[topIndices.length];
+                    for (int i = 0; i < topIndices.length; i++) {
+                        topDocIds[i] = scoredDocs.getDocId(topIndices[i]);
+                        topBM25Scores[i] = normalize(scoredDocs.getScore(topIndices[i]), minScore, maxScore, 0.0, 100.0);
+                    }
+                } else {
+                    // Documents which cannot enter the top results are skipped, so hits may be a lower bound.
+                    hitsLowerBound = !scorer.score(collector, groups);
+                    topDocIds = collector.topDocIds();
+                    topBM25Scores = collector.topScores();
                 }
+                hits = (int) collector.getTotalHits();
 
                 // Get any hits?
-                if (!finalScore.isEmpty()) {
-                    hits = finalScore.size();
-
-                    if (withPageRank) {
-                        // Normalization the BM25 score (with Min-max normalization)
-                        DoubleSummaryStatistics stat = finalScore.values().stream().collect(Collectors.summarizingDouble(s -> s));
-                        for (Integer docId : finalScore.keySet()) {
-                            finalScore.put(docId, normalize(finalScore.get(docId), stat.getMin(), stat.getMax(), 0.0, 100.0));
-                        }
+                if (topDocIds.length > 0) {
+                    // LinkedHashMap keep the insertion order, max to min.
+                    Map<String, String> titleScoreMap = new LinkedHashMap<>();
+                    for (int i = 0; i < topDocIds.length; i++) {
+                        titleScoreMap.put(Utility.levelDBGet(levelDB, "__docId_" + topDocIds[i]),
+                                buildScore(topDocIds[i], topBM25Scores[i]).toString());
                     }
 
-                    Map<String, String> titleScoreMap = finalScore.entrySet().stream()
-                            // Adding PageRank
-                            .map(entry -> combinePageRank(entry.getKey(), entry.getValue()))
-                            // Max to min
-                            .sorted((a, b) -> Double.compare(b.getValue().getTotalScore(), a.getValue().getTotalScore()))
-                            // Only top 1000 results
-                            .limit(1000)
-                            // LinkedHashMap keep the insertion order.
-                            .collect(LinkedHashMap::new, // Supplier
-                                    // Accumulator
-                                    (map, item) -> map.put(
-                                            Utility.levelDBGet(levelDB, "__docId_" + item.getKey()),
-                                            item.getValue().toString()
-                                    ),
-                                    // Combiner
-                                    LinkedHashMap::putAll
-                            );
-
                     pages = fetchRelatedPages(titleScoreMap, keyword, category, MixerSearcher::fragmentHighlight);
                 }
             }
 
-            return new SearchResult(hits, pages);
+            return new SearchResult(hits, hitsLowerBound, pages);
         } catch (Exception e) {
             System.out.println("MixerSearcher throws an Exception");
             e.printStackTrace();
@@ -0,0 +1,128 @@
+package edu.ucr.cs242.webapi;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor running HTTP exchanges, which bounds the number of queued requests.
+ * When saturated, the exchange is run on the dispatcher thread in the overloaded state,
+ * so that handlers can answer it immediately (see {@link #isOverloaded()}).
+ */
+public class RequestExecutor implements Executor {
+    /**
+     * The time to wait for in-flight requests to finish on shutdown, before interrupting them.
+     */
+    public static final int SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private static final ThreadLocal<Boolean> overloaded = ThreadLocal.withInitial(() -> false);
+
+    // Platform threads, with a bounded queue
+    private final ThreadPoolExecutor threadPool;
+    // Virtual threads, with a bounded number of in-flight requests
+    private final ExecutorService virtualThreads;
+    private final Semaphore virtualThreadPermits;
+
+    /**
+     * @return Whether the current exchange is rejected because the executor is saturated.
+     */
+    public static boolean isOverloaded() {
+        return overloaded.get();
+    }
+
+    private RequestExecutor(ThreadPoolExecutor threadPool, ExecutorService virtualThreads, int maxInFlight) {
+        this.threadPool = threadPool;
+        this.virtualThreads = virtualThreads;
+        this.virtualThreadPermits = virtualThreads != null ? new Semaphore(maxInFlight) : null;
+    }
+
+    /**
+     * Create an executor backed by a fixed number of platform threads.
+     * @param numOfThreads The number of worker threads.
+     * @param queueSize    The number of requests allowed to wait for a worker.
+     * @return The executor.
+     */
+    public static RequestExecutor newFixedThreadPool(int numOfThreads, int queueSize) {
+        AtomicInteger threadId = new AtomicInteger(0);
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(numOfThreads, numOfThreads,
+                0L, TimeUnit.MILLISECONDS,
+                queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(),
+                r -> new Thread(r, "WebAPI-Worker-" + threadId.getAndIncrement()),
+                new ThreadPoolExecutor.AbortPolicy());
+        return new RequestExecutor(threadPool, null, 0);
+    }
+
+    /**
+     * Create an executor starting a virtual thread per request. Requires Java 21 or later.
+     * @param maxInFlight The number of requests allowed to be processed at the same time.
+     * @return The executor.
+     * @throws UnsupportedOperationException If the running JVM has no virtual threads.
+     */
+    public static RequestExecutor newVirtualThreadExecutor(int maxInFlight) {
+        try {
+            // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory()), looked up reflectively to keep
+            // compiling on older JDKs. An executor service, rather than the bare factory, so shutdown can await them.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+            ExecutorService virtualThreads = (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            return new RequestExecutor(null, virtualThreads, maxInFlight);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later.", e);
+        }
+    }
+
+    private void runOverloaded(Runnable command) {
+        overloaded.set(true);
+        try { command.run(); }
+        finally { overloaded.set(false); }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (threadPool != null) {
+            try {
+                threadPool.execute(command);
+            } catch (RejectedExecutionException e) {
+                runOverloaded(command);
+            }
+        } else if (virtualThreadPermits.tryAcquire()) {
+            try {
+                virtualThreads.execute(() -> {
+                    try { command.run(); }
+                    finally { virtualThreadPermits.release(); }
+                });
+            } catch (RejectedExecutionException e) {
+                virtualThreadPermits.release();
+                runOverloaded(command);
+            }
+        } else {
+            runOverloaded(command);
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop taking requests, and wait for the in-flight ones to finish (interrupting them after a timeout),
+     * so that the searchers can be closed afterwards.
+     */
+    public void shutdown() {
+        if (threadPool != null) {
+            shutdown(threadPool);
+        }
+        if (virtualThreads != null) {
+            shutdown(virtualThreads);
+        }
+    }
+}
@@ -4,12 +4,20 @@ import java.util.List;
 
 public class SearchResult {
     private long numOfHits;
+    private boolean numOfHitsLowerBound;
     private List<RelatedPage> relatedPages;
 
     public long getNumOfHits() {
         return numOfHits;
     }
 
+    /**
+     * @return Whether the number of hits is only a lower bound, as documents were skipped without being counted.
+     */
+    public boolean isNumOfHitsLowerBound() {
+        return numOfHitsLowerBound;
+    }
+
     public List<RelatedPage> getRelatedPages() {
         return relatedPages;
     }
@@ -20,7 +28,18 @@ public class SearchResult {
      * @param relatedPages The list of related pages.
      */
     public SearchResult(long numOfHits, List<RelatedPage> relatedPages) {
+        this(numOfHits, false, relatedPages);
+    }
+
+    /**
+     * Represent the search result.
+     * @param numOfHits           The number of hits.
+     * @param numOfHitsLowerBound Whether the number of hits is only a lower bound.
+     * @param relatedPages        The list of related pages.
+     */
+    public SearchResult(long numOfHits, boolean numOfHitsLowerBound, List<RelatedPage> relatedPages) {
         this.numOfHits = numOfHits;
+        this.numOfHitsLowerBound = numOfHitsLowerBound;
         this.relatedPages = relatedPages;
     }
 }
@@ -4,15 +4,18 @@ import edu.ucr.cs242.Utility;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-public abstract class Searcher {
+public abstract class Searcher implements AutoCloseable {
     /**
      * The number of records to be batch-read per SQL transaction.
      */
@@ -28,10 +31,23 @@ public abstract class Searcher {
      */
     private static final int RESULT_PER_PAGE = 10;
 
-    protected final Connection dbConnection;
+    /**
+     * The default number of database connections kept open by a searcher.
+     */
+    public static final int NUMBER_OF_CONNECTIONS = 4;
+
+    // Searchers are shared across requests, each request borrows a connection from the pool.
+    private final BlockingQueue<Connection> connectionPool;
 
     protected Searcher(String jdbcUrl) throws SQLException {
-        this.dbConnection = DriverManager.getConnection(jdbcUrl);
+        this(jdbcUrl, NUMBER_OF_CONNECTIONS);
+    }
+
+    protected Searcher(String jdbcUrl, int numOfConnections) throws SQLException {
+        this.connectionPool = new ArrayBlockingQueue<>(numOfConnections);
+        for (int i = 0; i < numOfConnections; i++) {
+            connectionPool.add(DriverManager.getConnection(jdbcUrl));
+        }
     }
 
     private static String buildBatchSelectSQL(int numOfTitles) {
@@ -64,42 +80,55 @@ public abstract class Searcher {
         Map<String, RelatedPage> pages = new HashMap<>();
         List<String> titles = new ArrayList<>(titleScoreMap.keySet());
 
-        int fetchCount = 0;
-        while (fetchCount < titles.size()) {
-            int localCount = 0;
+        Connection dbConnection;
+        try {
+            dbConnection = connectionPool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
 
-            int batchSize = Math.min(titles.size() - fetchCount, BATCH_READ_COUNT);
-            try (PreparedStatement statement = dbConnection.prepareStatement(buildBatchSelectSQL(batchSize))) {
-                for (int i = 1; i <= batchSize; i++) {
-                    statement.setString(i, titles.get(fetchCount + i - 1));
-                }
+        // Always return the connection, or the pool shrinks and later requests block forever.
+        try {
+            int fetchCount = 0;
+            while (fetchCount < titles.size()) {
+                int localCount = 0;
 
-                try (ResultSet result = statement.executeQuery()) {
-                    while (result.next()) {
-                        String title = result.getString("title");
-                        String content = fragmentHighlight.apply(result.getString("content"), keyword);
-                        List<String> categories =
-                                Arrays.stream(result.getString("categories").split(Pattern.quote("|")))
-                                .collect(Collectors.toList());
-                        String lastMod = result.getString("lastModify");
-
-                        pages.put(title, new RelatedPage(
-                                fullTextHighlight(title, keyword, "span"),
-                                title,
-                                content,
-                                categories.stream().map(s -> fullTextHighlight(s, category, "b")).collect(Collectors.toList()),
-                                categories,
-                                lastMod,
-                                titleScoreMap.get(title)));
-                        ++localCount;
+                int batchSize = Math.min(titles.size() - fetchCount, BATCH_READ_COUNT);
+                try (PreparedStatement statement = dbConnection.prepareStatement(buildBatchSelectSQL(batchSize))) {
+                    for (int i = 1; i <= batchSize; i++) {
+                        statement.setString(i, titles.get(fetchCount + i - 1));
                     }
-                }
 
-                fetchCount += localCount;
-            } catch (Exception e) {
-                System.out.println("Searcher::fetchRelatedPages throws an Exception.");
-                e.printStackTrace();
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            String title = result.getString("title");
+                            String content = fragmentHighlight.apply(result.getString("content"), keyword);
+                            List<String> categories =
+                                    Arrays.stream(result.getString("categories").split(Pattern.quote("|")))
+                                    .collect(Collectors.toList());
+                            String lastMod = result.getString("lastModify");
+
+                            pages.put(title, new RelatedPage(
+                                    fullTextHighlight(title, keyword, "span"),
+                                    title,
+                                    content,
+                                    categories.stream().map(s -> fullTextHighlight(s, category, "b")).collect(Collectors.toList()),
+                                    categories,
+                                    lastMod,
+                                    titleScoreMap.get(title)));
+                            ++localCount;
+                        }
+                    }
+
+                    fetchCount += localCount;
+                } catch (Exception e) {
+                    System.out.println("Searcher::fetchRelatedPages throws an Exception.");
+                    e.printStackTrace();
+                }
             }
+        } finally {
+            connectionPool.add(dbConnection);
         }
 
         return titles.stream().map(pages::get).collect(Collectors.toList());
@@ -122,7 +151,8 @@ public abstract class Searcher {
         category = category.toLowerCase();
 
         SearchResult result = searchInternal(keyword, category);
-        JSONObject response = new JSONObject().put("hits", result.getNumOfHits());
+        JSONObject response = new JSONObject().put("hits", result.getNumOfHits())
+                .put("hitsLowerBound", result.isNumOfHitsLowerBound());
 
         List<RelatedPage> pages = result.getRelatedPages();
         if (!pages.isEmpty()) {
@@ -161,4 +191,20 @@ public abstract class Searcher {
     }
 
     protected abstract SearchResult searchInternal(String keyword, String category);
+
+    /**
+     * Pick up changes of the underlying index, if the searcher supports it.
+     * @return Whether the searcher has been refreshed.
+     */
+    public boolean refresh() throws IOException {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        for (Connection dbConnection : connectionPool) {
+            dbConnection.close();
+        }
+        connectionPool.clear();
+    }
 }
@@ -0,0 +1,138 @@
+package edu.ucr.cs242.webapi;
+
+/**
+ * Keep the k best scored documents with a bounded binary min-heap over primitive arrays.
+ * Documents with equal score are ranked by ascending docId.
+ */
+public class TopKCollector {
+    private final int k;
+    private final int[] docIds;
+    private final double[] scores;
+    private int size = 0;
+    private long totalHits = 0;
+    // The drained results, best first
+    private int[] sortedDocIds = null;
+    private double[] sortedScores = null;
+
+    /**
+     * @return The number of documents collected, including those not in the top k.
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return The lowest score in the top k, or negative infinity if fewer than k documents are collected.
+     */
+    public double getMinCompetitiveScore() {
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public TopKCollector(int k) {
+        this.k = k;
+        this.docIds = new int[k];
+        this.scores = new double[k];
+    }
+
+    // Whether a ranks lower than b.
+    private static boolean lessThan(int docIdA, double scoreA, int docIdB, double scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && docIdA > docIdB);
+    }
+
+    private void siftUp(int i) {
+        int docId = docIds[i];
+        double score = scores[i];
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!lessThan(docId, score, docIds[parent], scores[parent])) {
+                break;
+            }
+
+            docIds[i] = docIds[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+
+        docIds[i] = docId;
+        scores[i] = score;
+    }
+
+    private void siftDown(int i) {
+        int docId = docIds[i];
+        double score = scores[i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && lessThan(docIds[child + 1], scores[child + 1], docIds[child], scores[child])) {
+                ++child;
+            }
+            if (!lessThan(docIds[child], scores[child], docId, score)) {
+                break;
+            }
+
+            docIds[i] = docIds[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+
+        docIds[i] = docId;
+        scores[i] = score;
+    }
+
+    public void collect(int docId, double score) {
+        if (sortedDocIds != null) {
+            throw new IllegalStateException("The collector is already drained.");
+        }
+
+        ++totalHits;
+
+        if (size < k) {
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && lessThan(docIds[0], scores[0], docId, score)) {
+            docIds[0] = docId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    // Drain the heap into the sorted arrays, once.
+    private void drain() {
+        if (sortedDocIds != null) {
+            return;
+        }
+
+        sortedDocIds = new int[size];
+        sortedScores = new double[size];
+        for (int i = size - 1; i >= 0; i--) {
+            sortedDocIds[i] = docIds[0];
+            sortedScores[i] = scores[0];
+            docIds[0] = docIds[--size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Drain the heap. No more documents can be collected afterwards.
+     * @return The collected docIds, from the best to the worst.
+     */
+    public int[] topDocIds() {
+        drain();
+        return sortedDocIds;
+    }
+
+    /**
+     * Drain the heap. No more documents can be collected afterwards.
+     * @return The scores of the collected docIds, from the best to the worst.
+     */
+    public double[] topScores() {
+        drain();
+        return sortedScores;
+    }
+}
@@ -4,6 +4,7 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
 import org.apache.commons.cli.*;
 import org.fusesource.leveldbjni.JniDBFactory;
 import org.iq80.leveldb.DB;
@@ -23,42 +24,66 @@ import java.sql.SQLException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class WebAPI {
     private final int port;
     private final String jdbcUrl;
+    private final int numOfConnections;
     private final Path luceneIndexPath;
     private final Path mixerLevelDBPath;
+    private final int refreshInterval;
+    private final boolean memoryMapStatistics;
+    private final int phraseSlop;
+    private final RequestExecutor requestExecutor;
     private HttpServer httpServer;
 
-    class QueryHandler implements HttpHandler {
-        private final String jdbcUrl;
+    // Opened once at startup, shared by all requests.
+    private DB levelDB;
+    // <Method, Searcher>
+    private final Map<String, Searcher> searchers = new HashMap<>();
+    private ScheduledExecutorService refreshScheduler;
+
+    private static void writeResponse(HttpExchange httpExchange, int httpStatusCode, JSONObject jsonObject) throws IOException {
+        byte bytes[] = jsonObject.toString().getBytes("utf-8");
+        httpExchange.sendResponseHeaders(httpStatusCode, bytes.length);
+        OutputStream os = httpExchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
 
-        public QueryHandler(String jdbcUrl) {
-            this.jdbcUrl = jdbcUrl;
-        }
+    private static void writeSuccess(HttpExchange httpExchange, JSONObject jsonObject) throws IOException {
+        // HTTP 200: OK
+        writeResponse(httpExchange, 200, new JSONObject().put("error", false).put("data", jsonObject));
+    }
 
-        private void writeResponse(HttpExchange httpExchange, int httpStatusCode, JSONObject jsonObject) throws IOException {
-            byte bytes[] = jsonObject.toString().getBytes("utf-8");
-            httpExchange.sendResponseHeaders(httpStatusCode, bytes.length);
-            OutputStream os = httpExchange.getResponseBody();
-            os.write(bytes);
-            os.close();
-        }
+    private static void writeFailure(HttpExchange httpExchange, String reason) throws IOException {
+        // HTTP 400: Bad Request
+        writeResponse(httpExchange, 400, new JSONObject().put("error", true).put("data", reason));
+    }
 
-        private void writeSuccess(HttpExchange httpExchange, JSONObject jsonObject) throws IOException {
-            // HTTP 200: OK
-            writeResponse(httpExchange, 200, new JSONObject().put("error", false).put("data", jsonObject));
+    private static boolean shedOverload(HttpExchange httpExchange) throws IOException {
+        if (RequestExecutor.isOverloaded()) {
+            // HTTP 503: Service Unavailable
+            httpExchange.getResponseHeaders().set("Content-Type", "application/json");
+            httpExchange.getResponseHeaders().set("Retry-After", "1");
+            writeResponse(httpExchange, 503, new JSONObject().put("error", true).put("data", "Server is busy, try again later."));
+            return true;
         }
 
-        private void writeFailure(HttpExchange httpExchange, String reason) throws IOException {
-            // HTTP 400: Bad Request
-            writeResponse(httpExchange, 400, new JSONObject().put("error", true).put("data", reason));
-        }
+        return false;
+    }
 
+    class QueryHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange httpExchange) throws IOException {
+            if (shedOverload(httpExchange)) {
+                return;
+            }
+
             String rawQuery = httpExchange.getRequestURI().getRawQuery();
             httpExchange.getResponseHeaders().set("Content-Type", "application/json");
 
@@ -105,17 +130,8 @@ public class WebAPI {
                         }
 
                         String keyword = urlQuery.get("keyword");
-                        DB levelDB = null;
                         try {
-                            Searcher searcher;
-                            if (method.equals("lucene")) {
-                                searcher = new LuceneSearcher(jdbcUrl, luceneIndexPath);
-                            } else {
-                                org.iq80.leveldb.Options dbOptions = new org.iq80.leveldb.Options();
-                                dbOptions.createIfMissing(false);
-                                levelDB = JniDBFactory.factory.open(new File(mixerLevelDBPath.toString()), dbOptions);
-                                searcher = new MixerSearcher(jdbcUrl, levelDB, method.equals("mixerpr"));
-                            }
+                            Searcher searcher = searchers.get(method);
 
                             LocalDateTime start = LocalDateTime.now();
                             JSONObject searchResult = searcher.search(keyword, page - 1);
@@ -125,11 +141,6 @@ public class WebAPI {
                         } catch (Exception e) {
                             System.out.println("WebAPI throws an Exception.");
                             e.printStackTrace();
-                        } finally {
-                            // Close LevelDB anyway.
-                            if (levelDB != null) {
-                                levelDB.close();
-                            }
                         }
                     }
                 }
@@ -137,25 +148,101 @@ public class WebAPI {
         }
     }
 
+    class ReopenHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange httpExchange) throws IOException {
+            if (shedOverload(httpExchange)) {
+                return;
+            }
+
+            httpExchange.getResponseHeaders().set("Content-Type", "application/json");
+
+            try {
+                writeSuccess(httpExchange, refreshSearchers());
+            } catch (IOException e) {
+                System.out.println("WebAPI throws an IOException when reopening indexes.");
+                e.printStackTrace();
+                writeFailure(httpExchange, "Failed to reopen indexes: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Construct an RESTful API server with given settings.
-     * @param port             The port to listen on.
-     * @param jdbcUrl          The JDBC url to the database.
-     * @param luceneIndexPath  The directory to the Lucene index.
-     * @param mixerLevelDBPath The path to the Mixer index (LevelDB database).
+     * @param port                The port to listen on.
+     * @param jdbcUrl             The JDBC url to the database.
+     * @param numOfConnections    The number of database connections kept open by each searcher.
+     * @param luceneIndexPath     The directory to the Lucene index.
+     * @param mixerLevelDBPath    The path to the Mixer index (LevelDB database).
+     * @param refreshInterval     The interval (seconds) of checking index changes on disk, 0 to disable.
+     * @param memoryMapStatistics Whether memory-map the Mixer document statistics instead of loading into heap.
+     * @param phraseSlop          The max number of other words in between the query terms for a Mixer order match.
+     * @param requestExecutor     The executor to handle requests on.
      */
-    public WebAPI(int port, String jdbcUrl, Path luceneIndexPath, Path mixerLevelDBPath) {
+    public WebAPI(int port, String jdbcUrl, int numOfConnections, Path luceneIndexPath, Path mixerLevelDBPath,
+                  int refreshInterval, boolean memoryMapStatistics, int phraseSlop, RequestExecutor requestExecutor) {
         this.port = port;
         this.jdbcUrl = jdbcUrl;
+        this.numOfConnections = numOfConnections;
         this.luceneIndexPath = luceneIndexPath;
         this.mixerLevelDBPath = mixerLevelDBPath;
+        this.refreshInterval = refreshInterval;
+        this.memoryMapStatistics = memoryMapStatistics;
+        this.phraseSlop = phraseSlop;
+        this.requestExecutor = requestExecutor;
+    }
+
+    private void openSearchers() throws Exception {
+        org.iq80.leveldb.Options dbOptions = new org.iq80.leveldb.Options();
+        dbOptions.createIfMissing(false);
+        levelDB = JniDBFactory.factory.open(new File(mixerLevelDBPath.toString()), dbOptions);
+
+        searchers.put("lucene", new LuceneSearcher(jdbcUrl, numOfConnections, luceneIndexPath));
+        // Loaded once, shared by both Mixer searchers.
+        DocumentStatistics documentStatistics = DocumentStatistics.load(mixerLevelDBPath, levelDB, memoryMapStatistics);
+        searchers.put("mixer", new MixerSearcher(jdbcUrl, numOfConnections, levelDB, documentStatistics,
+                false, phraseSlop));
+        searchers.put("mixerpr", new MixerSearcher(jdbcUrl, numOfConnections, levelDB, documentStatistics,
+                true, phraseSlop));
+    }
+
+    // <Method, Refreshed>
+    private JSONObject refreshSearchers() throws IOException {
+        JSONObject refreshed = new JSONObject();
+        for (Map.Entry<String, Searcher> entry : searchers.entrySet()) {
+            refreshed.put(entry.getKey(), entry.getValue().refresh());
+        }
+        return refreshed;
+    }
+
+    private void closeSearchers() {
+        for (Searcher searcher : searchers.values()) {
+            try { searcher.close(); }
+            catch (Exception e) { e.printStackTrace(); }
+        }
+        searchers.clear();
+
+        if (levelDB != null) {
+            try { levelDB.close(); }
+            catch (IOException e) { e.printStackTrace(); }
+            levelDB = null;
+        }
     }
 
     public void start() {
+        try {
+            openSearchers();
+        } catch (Exception e) {
+            System.out.println("WebAPI failed to open the indexes: " + e.getMessage());
+            closeSearchers();
+            return;
+        }
+
         try {
             httpServer = HttpServer.create(new InetSocketAddress(port), 0);
-            httpServer.createContext("/query", new QueryHandler(jdbcUrl));
-            httpServer.setExecutor(null);
+            httpServer.createContext("/query", new QueryHandler());
+            httpServer.createContext("/reopen", new ReopenHandler());
+            httpServer.setExecutor(requestExecutor);
             httpServer.start();
 
             System.out.println("RESTful API server started (listening on " + port + ").");
@@ -164,10 +251,32 @@ public class WebAPI {
             System.out.println("WebAPI throws an IOException: " + e.getMessage());
         }
 
+        if (refreshInterval > 0) {
+            refreshScheduler = Executors.newSingleThreadScheduledExecutor();
+            refreshScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    JSONObject refreshed = refreshSearchers();
+                    if (refreshed.toMap().containsValue(true)) {
+                        System.out.println("WebAPI reopened changed indexes: " + refreshed + ".");
+                    }
+                } catch (IOException e) {
+                    System.out.println("WebAPI throws an IOException when reopening indexes.");
+                    e.printStackTrace();
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        }
+
         // Handle Ctrl+C
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Stopping server...");
-            httpServer.stop(0);
+            if (httpServer != null) {
+                httpServer.stop(0);
+            }
+            requestExecutor.shutdown();
+            if (refreshScheduler != null) {
+                refreshScheduler.shutdownNow();
+            }
+            closeSearchers();
             System.out.println("WebAPI stopped.");
         }));
     }
@@ -190,6 +299,11 @@ public class WebAPI {
 
     public static void main(String[] args) throws SQLException, ClassNotFoundException {
         final int PORT = 10483;
+        final int REFRESH_INTERVAL = 0;
+        final String EXECUTOR = "fixed";
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int QUEUE_SIZE = 100;
+        final int PHRASE_SLOP = 0;
 
         Options options = new Options();
         options.addOption(Option.builder("p")
@@ -199,6 +313,56 @@ public class WebAPI {
                 .numberOfArgs(1)
                 .build());
 
+        options.addOption(Option.builder("e")
+                .longOpt("executor")
+                .argName("fixed|virtual")
+                .desc("the threads handling requests, a fixed pool of platform threads or " +
+                        "a virtual thread per request (Java 21+) (default: " + EXECUTOR + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .argName("NUM OF THREADS")
+                .desc("the number of requests processed at the same time (default: " + NUMBER_OF_THREADS + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("q")
+                .longOpt("queue-size")
+                .argName("QUEUE SIZE")
+                .desc("the number of requests allowed to wait for a fixed pool thread, " +
+                        "further requests are answered with HTTP 503 (default: " + QUEUE_SIZE + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("r")
+                .longOpt("refresh-interval")
+                .argName("SECONDS")
+                .desc("the interval of reopening the Lucene index when it changes on disk, " +
+                        "0 to only reopen on /reopen requests (default: " + REFRESH_INTERVAL + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("c")
+                .longOpt("connections")
+                .argName("NUM OF CONNECTIONS")
+                .desc("the number of database connections kept open by each searcher " +
+                        "(default: the number of threads)")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("s")
+                .longOpt("phrase-slop")
+                .argName("SLOP")
+                .desc("the max number of other words in between the query terms, " +
+                        "for a Mixer result to still match the query in order (default: " + PHRASE_SLOP + ")")
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption("m", "mmap-statistics", false,
+                "memory-map the Mixer document length and PageRank files instead of loading them into heap");
+
         options.addOption("h", "help", false, "print a synopsis of standard options");
 
         try {
@@ -227,6 +391,39 @@ public class WebAPI {
 
             try {
                 int port = Integer.parseInt(cmd.getOptionValue("port", String.valueOf(PORT)));
+                int refreshInterval = Integer.parseInt(
+                        cmd.getOptionValue("refresh-interval", String.valueOf(REFRESH_INTERVAL)));
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int queueSize = Integer.parseInt(cmd.getOptionValue("queue-size", String.valueOf(QUEUE_SIZE)));
+                if (numOfThreads <= 0 || queueSize < 0) {
+                    throw new NumberFormatException("The number of threads must be positive.");
+                }
+                // One connection per request being processed.
+                int numOfConnections = Integer.parseInt(
+                        cmd.getOptionValue("connections", String.valueOf(numOfThreads)));
+                if (numOfConnections <= 0) {
+                    throw new NumberFormatException("The number of connections must be positive.");
+                }
+                int phraseSlop = Integer.parseInt(cmd.getOptionValue("phrase-slop", String.valueOf(PHRASE_SLOP)));
+                if (phraseSlop < 0) {
+                    throw new NumberFormatException("The phrase slop must not be negative.");
+                }
+
+                RequestExecutor requestExecutor = null;
+                String executor = cmd.getOptionValue("executor", EXECUTOR).toLowerCase();
+                if (executor.equals("fixed")) {
+                    requestExecutor = RequestExecutor.newFixedThreadPool(numOfThreads, queueSize);
+                } else if (executor.equals("virtual")) {
+                    try {
+                        requestExecutor = RequestExecutor.newVirtualThreadExecutor(numOfThreads);
+                    } catch (UnsupportedOperationException e) {
+                        printMessage("virtual threads are not supported by this JVM (Java 21+ required)");
+                        printUsage();
+                    }
+                } else {
+                    printMessage("invalid executor: " + executor);
+                    printUsage();
+                }
 
                 String jdbcUrl = argList.get(0);
                 Optional<Connection> dbConnection = Utility.getConnection(jdbcUrl);
@@ -258,7 +455,8 @@ public class WebAPI {
                     }
 
                     dbConnection.get().close();
-                    new WebAPI(port, jdbcUrl, luceneIndexPath, mixerLevelDBPath).start();
+                    new WebAPI(port, jdbcUrl, numOfConnections, luceneIndexPath, mixerLevelDBPath,
+                            refreshInterval, cmd.hasOption("mmap-statistics"), phraseSlop, requestExecutor).start();
                 }
             } catch (NumberFormatException e) {
                 printMessage("invalid option(s)");
@@ -20,6 +20,19 @@ public class SnowballProgram {
         ket = limit;
     }
 
+    /**
+     * Set the current string, from the first length chars of a buffer.
+     */
+    public void setCurrent(char[] text, int length) {
+        current.setLength(0);
+        current.append(text, 0, length);
+        cursor = 0;
+        limit = current.length();
+        limit_backward = 0;
+        bra = cursor;
+        ket = limit;
+    }
+
     /**
      * Get the current string.
      */
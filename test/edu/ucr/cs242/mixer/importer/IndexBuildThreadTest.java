@@ -0,0 +1,124 @@
+package edu.ucr.cs242.mixer.importer;
+
+import edu.ucr.cs242.mixer.index.PostingListWriter;
+import edu.ucr.cs242.mixer.mapreduce.DocumentMapper;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IndexBuildThreadTest {
+    private static final int NUM_OF_DOCUMENTS = 3000;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> documents;
+    // <term, binary posting list>, built by a single thread in docId order
+    private static Map<String, byte[]> expected;
+
+    private static String randomText(Random random, int numOfWords) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numOfWords; i++) {
+            // A skewed vocabulary, so that some terms have long posting lists.
+            int word = (int) Math.pow(random.nextInt(1 << 12), 2) >> 12;
+            text.append(' ').append("word").append(Integer.toString(word, 26).replaceAll("[0-9]", "x"));
+        }
+        return text.toString();
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Random random = new Random(242);
+        documents = new ArrayList<>();
+        for (int id = 0; id < NUM_OF_DOCUMENTS; id++) {
+            documents.add(new JSONObject()
+                    .put("id", id)
+                    .put("title", randomText(random, 3))
+                    .put("content", randomText(random, 50 + random.nextInt(100)))
+                    .put("categories", new JSONArray().put(randomText(random, 2)))
+                    .toString());
+        }
+
+        Map<String, PostingListWriter> writers = new TreeMap<>();
+        DocumentMapper documentMapper = new DocumentMapper();
+        for (String document : documents) {
+            documentMapper.map(document, (term, posting) -> writers.computeIfAbsent(term, t -> new PostingListWriter())
+                    .add(posting.getDocId(), posting.getFrequency(), posting.getPosition()));
+        }
+
+        expected = new TreeMap<>();
+        writers.forEach((term, writer) -> expected.put(term, writer.toByteArray()));
+    }
+
+    // Build the index of the documents, in the given order, and check it against the expected one.
+    private static int build(List<String> input, int numOfThreads, long memoryLimit) throws Exception {
+        File jsonOutputPath = folder.newFolder();
+        Files.write(jsonOutputPath.toPath().resolve("data.json"), input, StandardCharsets.UTF_8);
+        File buildPath = folder.newFolder();
+
+        org.iq80.leveldb.Options options = new org.iq80.leveldb.Options();
+        options.createIfMissing(true);
+
+        try (DB db = JniDBFactory.factory.open(folder.newFolder(), options)) {
+            IndexBuildThread thread = new IndexBuildThread(db, jsonOutputPath.toString(), buildPath.toString(),
+                    numOfThreads, memoryLimit);
+            thread.start();
+            thread.join();
+
+            Map<String, byte[]> actual = new TreeMap<>();
+            try (DBIterator iterator = db.iterator()) {
+                for (iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
+                    actual.put(JniDBFactory.asString(iterator.peekNext().getKey()), iterator.peekNext().getValue());
+                }
+            }
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+            }
+            // The spill files are cleaned up.
+            assertArrayEquals(new String[0], buildPath.list());
+
+            return thread.getNumOfSpills();
+        }
+    }
+
+    @Test
+    public void buildInMemory() throws Exception {
+        assertEquals(0, build(documents, 1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void buildInMemoryWithThreads() throws Exception {
+        build(documents, 4, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void buildWithSpills() throws Exception {
+        assertTrue(build(documents, 4, 64 << 10) > 1);
+    }
+
+    @Test
+    public void buildOutOfOrder() throws Exception {
+        // As if the shards of data.json were concatenated in reverse order.
+        List<String> reversed = new ArrayList<>();
+        for (int i = NUM_OF_DOCUMENTS; i > 0; i -= 700) {
+            reversed.addAll(documents.subList(Math.max(0, i - 700), i));
+        }
+        assertTrue(build(reversed, 1, Long.MAX_VALUE) > 0);
+        build(reversed, 4, 64 << 10);
+    }
+}
@@ -0,0 +1,172 @@
+package edu.ucr.cs242.mixer.index;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PostingListTest {
+    private static final int[] SIZES = { 0, 1, PostingList.BLOCK_SIZE - 1, PostingList.BLOCK_SIZE,
+            PostingList.BLOCK_SIZE + 1, PostingList.BLOCK_SIZE * 7 + 3 };
+
+    /**
+     * Random postings of a term, kept as written.
+     */
+    private static class Postings {
+        private final int[] docIds;
+        // [posting][fieldId]
+        private final int[][] frequency;
+        // [posting][fieldId][i]
+        private final int[][][] position;
+
+        private Postings(Random random, int size) {
+            docIds = new int[size];
+            frequency = new int[size][PostingList.NUM_OF_FIELDS];
+            position = new int[size][PostingList.NUM_OF_FIELDS][];
+
+            int docId = -1;
+            for (int i = 0; i < size; i++) {
+                // Mostly small gaps, sometimes a large one.
+                docId += 1 + (random.nextInt(10) == 0 ? random.nextInt(1 << 20) : random.nextInt(100));
+                docIds[i] = docId;
+
+                for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                    int freq = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(5);
+                    frequency[i][fieldId] = freq;
+                    position[i][fieldId] = random.ints(0, 1 << 16).distinct().limit(freq).sorted().toArray();
+                }
+            }
+        }
+
+        private byte[] encode() {
+            PostingListWriter writer = new PostingListWriter();
+            for (int i = 0; i < docIds.length; i++) {
+                int[] positions = new int[0];
+                for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                    int[] concat = new int[positions.length + position[i][fieldId].length];
+                    System.arraycopy(positions, 0, concat, 0, positions.length);
+                    System.arraycopy(position[i][fieldId], 0, concat, positions.length, position[i][fieldId].length);
+                    positions = concat;
+                }
+                writer.add(docIds[i], frequency[i], positions);
+            }
+            return writer.toByteArray();
+        }
+
+        // `[{"docId": {"frequency": [...], "position": [[...], ...]}}, ...]`, in reverse docId order.
+        private String encodeLegacy() {
+            JSONArray array = new JSONArray();
+            for (int i = docIds.length - 1; i >= 0; i--) {
+                array.put(new JSONObject().put(String.valueOf(docIds[i]), new JSONObject()
+                        .put("frequency", new JSONArray(frequency[i]))
+                        .put("position", new JSONArray(position[i]))));
+            }
+            return array.toString();
+        }
+
+        private void assertPosting(PostingList list, int i) {
+            assertEquals(docIds[i], list.getDocId(i));
+            for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                assertEquals(frequency[i][fieldId], list.getFrequency(i, fieldId));
+
+                int start = list.getPositionStart(i, fieldId);
+                int end = list.getPositionEnd(i, fieldId);
+                int[] positions = list.getPositions();
+                assertEquals(position[i][fieldId].length, end - start);
+                for (int j = start; j < end; j++) {
+                    assertEquals(position[i][fieldId][j - start], positions[j]);
+                }
+            }
+        }
+
+        private void assertEqualTo(PostingList list) {
+            assertEquals(docIds.length, list.size());
+            for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                int docFrequency = 0;
+                for (int[] freq : frequency) {
+                    docFrequency += freq[fieldId] > 0 ? 1 : 0;
+                }
+                assertEquals(docFrequency, list.getDocFrequency(fieldId));
+            }
+
+            for (int i = 0; i < docIds.length; i++) {
+                assertPosting(list, i);
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(242);
+        for (int size : SIZES) {
+            Postings postings = new Postings(random, size);
+            byte[] value = postings.encode();
+
+            assertTrue(PostingList.isBinaryFormat(value));
+            PostingList list = PostingList.decode(value);
+            postings.assertEqualTo(list);
+            assertArrayEquals(value, list.encode());
+        }
+    }
+
+    @Test
+    public void roundTripLegacy() {
+        Random random = new Random(242);
+        for (int size : SIZES) {
+            Postings postings = new Postings(random, size);
+            byte[] value = postings.encodeLegacy().getBytes(StandardCharsets.UTF_8);
+
+            assertFalse(PostingList.isBinaryFormat(value));
+            PostingList list = PostingList.decode(value);
+            postings.assertEqualTo(list);
+            assertArrayEquals(postings.encode(), list.encode());
+        }
+    }
+
+    @Test
+    public void decodesBlocksInAnyOrder() {
+        Postings postings = new Postings(new Random(242), PostingList.BLOCK_SIZE * 5 + 17);
+        PostingList list = PostingList.decode(postings.encode());
+
+        for (int i = postings.docIds.length - 1; i >= 0; i -= 50) {
+            postings.assertPosting(list, i);
+        }
+        assertEquals(6, list.getNumOfDecodedBlocks());
+        postings.assertEqualTo(list);
+    }
+
+    @Test
+    public void advance() {
+        Random random = new Random(242);
+        Postings postings = new Postings(random, PostingList.BLOCK_SIZE * 9 + 5);
+        byte[] value = postings.encode();
+        int lastDocId = postings.docIds[postings.docIds.length - 1];
+
+        for (int n = 0; n < 2000; n++) {
+            PostingList list = PostingList.decode(value);
+            int index = random.nextInt(list.size() + 1);
+            int target = random.nextInt(lastDocId + 10);
+
+            int expected = index;
+            while (expected < list.size() && postings.docIds[expected] < target) {
+                ++expected;
+            }
+            int actual = list.advance(index, target);
+            assertEquals(expected, actual);
+
+            // Only the block of the result is decoded, if any.
+            assertEquals(actual < list.size() ? 1 : 0, list.getNumOfDecodedBlocks());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnorderedDocIds() {
+        PostingListWriter writer = new PostingListWriter();
+        writer.add(2, new int[PostingList.NUM_OF_FIELDS], new int[0]);
+        writer.add(1, new int[PostingList.NUM_OF_FIELDS], new int[0]);
+    }
+}
@@ -0,0 +1,91 @@
+package edu.ucr.cs242.mixer.index;
+
+import edu.ucr.cs242.Utility;
+import org.junit.Test;
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.englishStemmer;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class TokenizerTest {
+    private static final String[] WORDS = {
+            "The", "running", "Runner's", "(hello)", "don't", "U.S.A.", "e-mail", "--", "...", "Caf\u00E9",
+            "na\u00EFve", "\u00DCBER", "x86", "2017", "\"quoted\"", "[[link]]", "C++", "#tag", "a", "AND", "Is",
+            "caresses", "ponies"
+    };
+    private static final String CHARS = "abcXYZ019!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~ \t\n\r\f\u0000\u0001\u007F" +
+            "\u00A0\u00E9\u00DC";
+
+    // The tokenizing of the index job before the shared tokenizer.
+    private static List<String> regexTokenize(String text, List<Integer> positions) {
+        SnowballStemmer stemmer = new englishStemmer();
+        List<String> terms = new ArrayList<>();
+        StringTokenizer tokenizer = new StringTokenizer(text.toLowerCase());
+
+        int tokenCount = 0;
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken()
+                    .replaceAll("^\\p{Punct}*|\\p{Punct}*$", "")
+                    .trim().toLowerCase();
+
+            if (Pattern.matches("^[\\p{Alnum}]+$", token) && !Utility.isStopWord(token)) {
+                stemmer.setCurrent(token);
+                stemmer.stem();
+                terms.add(stemmer.getCurrent());
+                positions.add(tokenCount);
+            }
+            ++tokenCount;
+        }
+        return terms;
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            if (random.nextBoolean()) {
+                text.append(random.nextBoolean() ? WORDS[random.nextInt(WORDS.length)] :
+                        Utility.getStopWords().get(random.nextInt(Utility.getStopWords().size())));
+            } else {
+                for (int j = random.nextInt(8); j > 0; j--) {
+                    text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+                }
+            }
+            text.append(random.nextInt(4) == 0 ? "\t" : " ");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void matchesRegexPipeline() throws Exception {
+        Random random = new Random(242);
+        Tokenizer tokenizer = new Tokenizer();
+
+        for (int n = 0; n < 50000; n++) {
+            String text = randomText(random);
+            List<Integer> expectedPositions = new ArrayList<>();
+            List<String> expected = regexTokenize(text, expectedPositions);
+
+            List<String> terms = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            int numOfTokens = tokenizer.tokenize(text, (term, position) -> {
+                terms.add(term);
+                positions.add(position);
+            });
+
+            assertEquals(text, expected, terms);
+            assertEquals(text, expectedPositions, positions);
+            assertEquals(text, new StringTokenizer(text).countTokens(), numOfTokens);
+            assertEquals(text, numOfTokens, Tokenizer.countTokens(text));
+        }
+    }
+
+    @Test
+    public void tokenizesQueriesAsText() {
+        Tokenizer tokenizer = new Tokenizer();
+        assertEquals(Arrays.asList("run", "dog"), tokenizer.tokenize("Running, the DOGS!"));
+        assertEquals(Collections.emptyList(), tokenizer.tokenize(" \t--- of ... "));
+    }
+}
@@ -0,0 +1,108 @@
+package edu.ucr.cs242.mixer.mapreduce;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TermDocIdWritableTest {
+    private static final String[] TERMS = {
+            "", "a", "ab", "abc", "b", "run", "runner", "z", "zz", "\u007F", "caf\u00E9", "\u00FCber",
+            "\u4E2D\u6587", "\uD83D\uDE00", "a\u00E9", "a\u4E2D"
+    };
+    private static final int[] DOC_IDS = {
+            0, 1, 2, 127, 128, 255, 256, 65535, 65536, Integer.MAX_VALUE, -1, -128, Integer.MIN_VALUE
+    };
+
+    private static TermDocIdWritable randomKey(Random random) {
+        TermDocIdWritable key = new TermDocIdWritable();
+        String term = random.nextInt(4) == 0 ?
+                TERMS[random.nextInt(TERMS.length)] + TERMS[random.nextInt(TERMS.length)] :
+                TERMS[random.nextInt(TERMS.length)];
+        // Long terms take more than one byte of vint length.
+        if (random.nextInt(20) == 0) {
+            StringBuilder builder = new StringBuilder(term);
+            for (int i = 100 + random.nextInt(200); i > 0; i--) {
+                builder.append((char) ('a' + random.nextInt(3)));
+            }
+            term = builder.toString();
+        }
+        int docId = random.nextBoolean() ? DOC_IDS[random.nextInt(DOC_IDS.length)] : random.nextInt();
+        key.set(term, docId);
+        return key;
+    }
+
+    @Test
+    public void rawComparatorsMatchObjectComparison() throws Exception {
+        Random random = new Random(242);
+        TermDocIdWritable.Comparator comparator = new TermDocIdWritable.Comparator();
+        TermDocIdWritable.GroupingComparator groupingComparator = new TermDocIdWritable.GroupingComparator();
+        TermPartitioner<Object> partitioner = new TermPartitioner<>();
+
+        for (int n = 0; n < 100000; n++) {
+            TermDocIdWritable a = randomKey(random);
+            TermDocIdWritable b = random.nextInt(4) == 0 ? new TermDocIdWritable() : randomKey(random);
+            if (b.getTerm().getLength() == 0 && b.getDocId() == 0) {
+                // The same term, to compare by document id.
+                b.set(a.getTerm().toString(), random.nextInt(3) == 0 ? a.getDocId() : random.nextInt());
+            }
+            String message = a + " " + b;
+
+            // Both keys in one buffer, with some bytes in front, as the shuffle does.
+            DataOutputBuffer buffer = new DataOutputBuffer();
+            buffer.write(new byte[random.nextInt(8)]);
+            int s1 = buffer.getLength();
+            a.write(buffer);
+            int l1 = buffer.getLength() - s1;
+            int s2 = buffer.getLength();
+            b.write(buffer);
+            int l2 = buffer.getLength() - s2;
+            byte[] bytes = buffer.getData();
+
+            assertEquals(message, Integer.signum(a.compareTo(b)),
+                    Integer.signum(comparator.compare(bytes, s1, l1, bytes, s2, l2)));
+            assertEquals(message, Integer.signum(a.getTerm().compareTo(b.getTerm())),
+                    Integer.signum(groupingComparator.compare(bytes, s1, l1, bytes, s2, l2)));
+            assertEquals(message, Integer.signum(a.getTerm().compareTo(b.getTerm())),
+                    Integer.signum(groupingComparator.compare(a, b)));
+
+            // The partition only depends on the term.
+            if (a.getTerm().equals(b.getTerm())) {
+                assertEquals(message, partitioner.getPartition(a, null, 7), partitioner.getPartition(b, null, 7));
+            }
+        }
+    }
+
+    @Test
+    public void readFieldsRoundTrip() throws Exception {
+        Random random = new Random(242);
+        DataOutputBuffer output = new DataOutputBuffer();
+        TermDocIdWritable[] keys = new TermDocIdWritable[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomKey(random);
+            keys[i].write(output);
+        }
+
+        DataInputBuffer input = new DataInputBuffer();
+        input.reset(output.getData(), output.getLength());
+        // Reuse the key, as the framework does.
+        TermDocIdWritable key = new TermDocIdWritable();
+        for (TermDocIdWritable expected : keys) {
+            key.readFields(input);
+            assertEquals(expected.getTerm(), key.getTerm());
+            assertEquals(expected.getDocId(), key.getDocId());
+            assertEquals(expected, key);
+            assertEquals(expected.hashCode(), key.hashCode());
+        }
+        assertEquals(output.getLength(), input.getPosition());
+    }
+
+    @Test
+    public void comparatorIsRegistered() {
+        assertTrue(WritableComparator.get(TermDocIdWritable.class) instanceof TermDocIdWritable.Comparator);
+    }
+}
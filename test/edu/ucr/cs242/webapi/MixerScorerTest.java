@@ -0,0 +1,228 @@
+package edu.ucr.cs242.webapi;
+
+import edu.ucr.cs242.mixer.index.BM25;
+import edu.ucr.cs242.mixer.index.DocumentStatistics;
+import edu.ucr.cs242.mixer.index.PostingList;
+import edu.ucr.cs242.mixer.index.PostingListWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MixerScorerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // The title and the content boosts of the keyword, and the category boost, as MixerSearcher does.
+    private static final MixerScorer.FieldBoost[] KEYWORD_BOOSTS = {
+            new MixerScorer.FieldBoost(0, 20.0f, 10.0f, 5.0f, 1.0f, 1.0f),
+            new MixerScorer.FieldBoost(1, 2.0f, 1.2f, 1.05f, 1.0f, 0.5f)
+    };
+    private static final MixerScorer.FieldBoost CATEGORY_BOOST = new MixerScorer.FieldBoost(2, 20.0f, 10.0f, 5.0f, 1.0f, 1.0f);
+
+    /**
+     * Documents given as the term ids of each field, indexed into posting lists.
+     */
+    private class Corpus {
+        private final int numOfTerms;
+        private final int numOfDocs;
+        private final PostingList[] postings;
+        private final double[][] termFreqBounds;
+        private final double[] avgDocLength = new double[PostingList.NUM_OF_FIELDS];
+        private final DocumentStatistics statistics;
+
+        // [docId][fieldId] -> the term id of each position, negative for other words
+        private Corpus(int numOfTerms, int[][][] documents) throws Exception {
+            this.numOfTerms = numOfTerms;
+            this.numOfDocs = documents.length;
+
+            int[][] docLength = new int[PostingList.NUM_OF_FIELDS][numOfDocs];
+            PostingListWriter[] writers = new PostingListWriter[numOfTerms];
+            for (int t = 0; t < numOfTerms; t++) {
+                writers[t] = new PostingListWriter();
+            }
+
+            for (int docId = 0; docId < numOfDocs; docId++) {
+                for (int t = 0; t < numOfTerms; t++) {
+                    int[] frequency = new int[PostingList.NUM_OF_FIELDS];
+                    List<Integer> position = new ArrayList<>();
+                    for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                        int[] field = documents[docId][fieldId];
+                        for (int pos = 0; pos < field.length; pos++) {
+                            if (field[pos] == t) {
+                                ++frequency[fieldId];
+                                position.add(pos);
+                            }
+                        }
+                    }
+
+                    if (!position.isEmpty()) {
+                        writers[t].add(docId, frequency, position.stream().mapToInt(i -> i).toArray());
+                    }
+                }
+
+                for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                    docLength[fieldId][docId] = documents[docId][fieldId].length;
+                    avgDocLength[fieldId] += (double) docLength[fieldId][docId] / numOfDocs;
+                }
+            }
+
+            Path path = folder.newFolder().toPath();
+            DocumentStatistics.writeDocLength(path.resolve(DocumentStatistics.DOC_LENGTH_FILE), numOfDocs, docLength);
+            DocumentStatistics.writePageRank(path.resolve(DocumentStatistics.PAGE_RANK_FILE), numOfDocs, new float[numOfDocs]);
+            statistics = DocumentStatistics.load(path, null, false);
+
+            postings = new PostingList[numOfTerms];
+            termFreqBounds = new double[numOfTerms][];
+            for (int t = 0; t < numOfTerms; t++) {
+                if (writers[t].size() > 0) {
+                    byte[] value = writers[t].toByteArray();
+                    termFreqBounds[t] = maxTermFreqWeight(PostingList.decode(value));
+                    // Not yet decoded by the bounds.
+                    postings[t] = PostingList.decode(value);
+                }
+            }
+        }
+
+        // The max BM25 part 2 of the term in each field, as TermBoundImportThread imports.
+        private double[] maxTermFreqWeight(PostingList list) {
+            double[] bound = new double[PostingList.NUM_OF_FIELDS];
+            Arrays.fill(bound, Double.NEGATIVE_INFINITY);
+            for (int i = 0; i < list.size(); i++) {
+                for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                    int termFreq = list.getFrequency(i, fieldId);
+                    if (termFreq > 0) {
+                        bound[fieldId] = Math.max(bound[fieldId], BM25.termFreqWeight(termFreq,
+                                statistics.getDocLength(list.getDocId(i), fieldId), avgDocLength[fieldId]));
+                    }
+                }
+            }
+            return bound;
+        }
+
+        // Decode the posting lists again, so that the decoded blocks are counted per query.
+        private void reset() {
+            for (int t = 0; t < numOfTerms; t++) {
+                if (postings[t] != null) {
+                    postings[t] = PostingList.decode(postings[t].encode());
+                }
+            }
+        }
+
+        private MixerScorer.TermGroup group(int[] query, MixerScorer.FieldBoost... fieldBoosts) {
+            int[] distinctTerms = Arrays.stream(query).distinct().toArray();
+            int[] queryFreq = Arrays.stream(distinctTerms)
+                    .map(t -> (int) Arrays.stream(query).filter(q -> q == t).count()).toArray();
+            int[] querySequence = Arrays.stream(query).map(q -> {
+                for (int i = 0; i < distinctTerms.length; i++) {
+                    if (distinctTerms[i] == q) {
+                        return i;
+                    }
+                }
+                throw new AssertionError();
+            }).toArray();
+
+            return new MixerScorer.TermGroup(
+                    Arrays.stream(distinctTerms).mapToObj(t -> postings[t]).toArray(PostingList[]::new),
+                    Arrays.stream(distinctTerms).mapToObj(t -> termFreqBounds[t]).toArray(double[][]::new),
+                    queryFreq, querySequence, fieldBoosts);
+        }
+
+        private MixerScorer scorer() {
+            return new MixerScorer(numOfDocs, avgDocLength, statistics, 2);
+        }
+    }
+
+    // The top k of all scored documents.
+    private static TopKCollector exhaustiveTopK(MixerScorer scorer, int k, MixerScorer.TermGroup... groups) {
+        MixerScorer.ScoredDocs scoredDocs = scorer.score(groups);
+        TopKCollector collector = new TopKCollector(k);
+        for (int i = 0; i < scoredDocs.size(); i++) {
+            collector.collect(scoredDocs.getDocId(i), scoredDocs.getScore(i));
+        }
+        return collector;
+    }
+
+    @Test
+    public void wandSkipsBlocksBelowPivot() throws Exception {
+        // Term 0 is in the first 80 blocks of documents, term 1 only in two documents far apart.
+        int numOfPostings = PostingList.BLOCK_SIZE * 80;
+        int firstDocId = 5, secondDocId = PostingList.BLOCK_SIZE * 70 + 40;
+        int[][][] documents = new int[numOfPostings * 4][][];
+        for (int docId = 0; docId < documents.length; docId++) {
+            boolean both = docId == firstDocId || docId == secondDocId;
+            int term = docId < numOfPostings ? 0 : -1;
+            documents[docId] = new int[][] {
+                    both ? new int[] { 0, 1 } : new int[] { term },
+                    both ? new int[] { 0, 1, -1, -1, -1, -1, -1, -1 } : new int[] { term, -1, -1, -1, -1, -1, -1, -1 },
+                    new int[] { -1 }
+            };
+        }
+
+        Corpus corpus = new Corpus(2, documents);
+        MixerScorer scorer = corpus.scorer();
+        TopKCollector collector = new TopKCollector(1);
+        assertFalse(scorer.score(collector, corpus.group(new int[] { 0, 1 }, KEYWORD_BOOSTS)));
+
+        assertArrayEquals(new int[] { firstDocId }, collector.topDocIds());
+        // Once the first document with both terms is in, term 0 alone cannot enter the top results, so its cursor
+        // jumps to the second one. Only the first block and the block of the second document are decoded.
+        assertEquals(2, corpus.postings[0].getNumOfDecodedBlocks());
+        assertEquals(1, corpus.postings[1].getNumOfDecodedBlocks());
+
+        TopKCollector expected = exhaustiveTopK(scorer, 1, corpus.group(new int[] { 0, 1 }, KEYWORD_BOOSTS));
+        assertArrayEquals(expected.topScores(), collector.topScores(), 0);
+        assertEquals(80, corpus.postings[0].getNumOfDecodedBlocks());
+    }
+
+    @Test
+    public void wandMatchesExhaustiveTopK() throws Exception {
+        int numOfTerms = 8;
+        Random random = new Random(242);
+
+        int[][][] documents = new int[3000][][];
+        int[] fieldLength = { 6, 120, 4 };
+        for (int docId = 0; docId < documents.length; docId++) {
+            documents[docId] = new int[PostingList.NUM_OF_FIELDS][];
+            for (int fieldId = 0; fieldId < PostingList.NUM_OF_FIELDS; fieldId++) {
+                int[] field = new int[1 + random.nextInt(fieldLength[fieldId])];
+                for (int pos = 0; pos < field.length; pos++) {
+                    // Skewed, so that the terms range from common to rare, and most words are other words.
+                    int term = (int) (-Math.log(random.nextDouble()) * 4) - 4;
+                    field[pos] = term < numOfTerms ? term : -1;
+                }
+                documents[docId][fieldId] = field;
+            }
+        }
+
+        Corpus corpus = new Corpus(numOfTerms, documents);
+        MixerScorer scorer = corpus.scorer();
+
+        for (int query = 0; query < 200; query++) {
+            int[] keyword = random.ints(1 + random.nextInt(3), 0, numOfTerms).toArray();
+            int[] category = random.nextBoolean() ? random.ints(1 + random.nextInt(2), 0, numOfTerms).toArray() : null;
+            int k = new int[] { 1, 10, 100 }[random.nextInt(3)];
+            String message = Arrays.toString(keyword) + " " + Arrays.toString(category) + " top " + k;
+
+            corpus.reset();
+            MixerScorer.TermGroup[] groups = category == null ?
+                    new MixerScorer.TermGroup[] { corpus.group(keyword, KEYWORD_BOOSTS) } :
+                    new MixerScorer.TermGroup[] { corpus.group(keyword, KEYWORD_BOOSTS), corpus.group(category, CATEGORY_BOOST) };
+            TopKCollector collector = new TopKCollector(k);
+            boolean exact = scorer.score(collector, groups);
+
+            TopKCollector expected = exhaustiveTopK(scorer, k, groups);
+            assertArrayEquals(message, expected.topDocIds(), collector.topDocIds());
+            assertArrayEquals(message, expected.topScores(), collector.topScores(), 0);
+            if (exact) {
+                assertEquals(message, expected.getTotalHits(), collector.getTotalHits());
+            } else {
+                assertTrue(message, collector.getTotalHits() <= expected.getTotalHits());
+            }
+        }
+    }
+}
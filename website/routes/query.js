@@ -55,6 +55,7 @@ router.get('/', function(req, res, next) {
                         pageUrlSuffix: '/query?method=' + method + '&keyword=' + keyword + '&page=',
                         totalPages: body.data.totalPages,
                         hits: body.data.hits,
+                        hitsLowerBound: body.data.hitsLowerBound === true,
                         pages: body.data.pages,
                         time: body.data.elapsedTime / 1000.0
                     });